@@ -0,0 +1,76 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.App;
+import de.julianhofmann.util.PatternManager;
+import de.julianhofmann.util.Settings;
+import de.julianhofmann.world.CellSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Test data shared by the benchmarks. The benchmarks are started from the project directory,
+ * so the pattern library is read from {@code rsc/patterns}.
+ */
+final class BenchmarkData {
+    static final String PATTERN_LIBRARY = System.getProperty("bench.patterns", "rsc/patterns");
+
+    private static Path dataDir;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Default settings instead of the ones of the user. Has to be called before a world is created.
+     */
+    static Settings settings() {
+        if (App.settings == null) App.settings = new Settings();
+        return App.settings;
+    }
+
+    /**
+     * Copies the pattern library into a temporary data directory and lets the {@link PatternManager} use it,
+     * so the patterns of the user are never touched. Has to be called before the PatternManager class is used.
+     */
+    static synchronized Path usePatternLibrary() {
+        if (dataDir != null) return dataDir;
+        try {
+            dataDir = Files.createTempDirectory("golminator-bench");
+            Path patterns = Files.createDirectories(dataDir.resolve("patterns"));
+            try (Stream<Path> files = Files.list(Paths.get(PATTERN_LIBRARY))) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, patterns.resolve(file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("golminator.dataDir", dataDir.toString());
+        return dataDir;
+    }
+
+    /**
+     * {@code count} random living cells in a square that is about half filled.
+     */
+    static CellSet randomCells(int count, long seed) {
+        Random random = new Random(seed);
+        int size = (int) Math.ceil(Math.sqrt(count * 2d));
+        CellSet cells = new CellSet();
+        while (cells.size() < count) {
+            cells.set(random.nextInt(size) - size / 2, random.nextInt(size) - size / 2, (byte) 1);
+        }
+        return cells;
+    }
+
+    static void delete(Path directory) {
+        if (directory == null) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
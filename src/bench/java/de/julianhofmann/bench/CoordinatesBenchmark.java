@@ -0,0 +1,63 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.world.Coordinates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Coordinates} are the keys of the patterns, the selection and the undo stages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinatesBenchmark {
+    private static final int COUNT = 1 << 16;
+
+    private final Coordinates[] coordinates = new Coordinates[COUNT];
+    private final Coordinates[] copies = new Coordinates[COUNT];
+    private final HashMap<Coordinates, Byte> map = new HashMap<>();
+    private int index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            coordinates[i] = new Coordinates(random.nextInt(2048) - 1024, random.nextInt(2048) - 1024);
+            copies[i] = coordinates[i].copy();
+            map.put(coordinates[i], (byte) 1);
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public int hash() {
+        return coordinates[next()].hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        int i = next();
+        return coordinates[i].equals(copies[i]);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        int i = next();
+        return coordinates[i].equals(coordinates[(i + 1) & (COUNT - 1)]);
+    }
+
+    @Benchmark
+    public Byte hashMapGet() {
+        return map.get(copies[next()]);
+    }
+}
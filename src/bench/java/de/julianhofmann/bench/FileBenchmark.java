@@ -0,0 +1,55 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link World#load(String)} and {@link World#save(String)} on synthetic worlds with millions of cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileBenchmark {
+    @Param({"1000000", "4000000"})
+    public int cells;
+
+    private Path directory;
+    private String input;
+    private String output;
+    private World world;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.settings();
+        directory = Files.createTempDirectory("golminator-bench");
+        input = directory.resolve("input.gol").toString();
+        output = directory.resolve("output.gol").toString();
+
+        world = new World();
+        world.setCells(BenchmarkData.randomCells(cells, 42));
+        if (!world.save(input)) throw new IOException("Couldn't write " + input);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+
+    @Benchmark
+    public boolean load() {
+        return world.load(input);
+    }
+
+    @Benchmark
+    public boolean save() {
+        return world.save(output);
+    }
+}
@@ -0,0 +1,42 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.util.PatternManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PatternManager#refreshPatterns()} on a copy of the pattern library. A new manager parses all
+ * files, an existing one only lists the directory if nothing has changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternManagerBenchmark {
+    private PatternManager patternManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.usePatternLibrary();
+        patternManager = new PatternManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(BenchmarkData.usePatternLibrary());
+    }
+
+    @Benchmark
+    public int refreshAll() {
+        return new PatternManager().getPatterns().size();
+    }
+
+    @Benchmark
+    public int refreshUnchanged() {
+        patternManager.refreshPatterns();
+        return patternManager.getPatterns().size();
+    }
+}
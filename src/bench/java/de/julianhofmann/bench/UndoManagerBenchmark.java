@@ -0,0 +1,57 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.world.Coordinates;
+import de.julianhofmann.world.UndoManager;
+import de.julianhofmann.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heavy drawing: every invocation is one stroke of {@link #STROKE_LENGTH} cells in a new undo stage,
+ * once straight into the {@link UndoManager} and once through {@link World#fillCellsOnLine}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UndoManagerBenchmark {
+    private static final int STROKE_LENGTH = 10_000;
+
+    private final Coordinates[] stroke = new Coordinates[STROKE_LENGTH];
+    private World world;
+    private UndoManager undoManager;
+    private byte value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.settings();
+        world = new World();
+        undoManager = world.getUndoManager();
+        for (int i = 0; i < STROKE_LENGTH; i++) {
+            stroke[i] = new Coordinates(i, i / 3);
+        }
+    }
+
+    @Benchmark
+    public UndoManager addChange() {
+        // Alternating values, so every change is a real one
+        byte before = value;
+        value = (byte) (1 - value);
+        undoManager.newUndoStage();
+        for (Coordinates coordinates : stroke) {
+            undoManager.addChange(before, value, coordinates);
+        }
+        return undoManager;
+    }
+
+    @Benchmark
+    public World fillCellsOnLine() {
+        value = (byte) (1 - value);
+        undoManager.newUndoStage();
+        world.fillCellsOnLine(stroke[0], stroke[STROKE_LENGTH - 1], value);
+        return world;
+    }
+}
@@ -0,0 +1,89 @@
+package de.julianhofmann.bench;
+
+import de.julianhofmann.util.PatternManager;
+import de.julianhofmann.world.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link World#update()} on the methuselahs and guns of the pattern library. Every iteration starts
+ * again at generation {@code offset}, so all iterations measure the same generations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldBenchmark {
+    @Param({"Gosper glider gun", "Switch engine", "Lidka", "Acorn", "Pi-heptomino"})
+    public String pattern;
+
+    @Param({"0", "1000", "5000"})
+    public int offset;
+
+    @Param({"default", "hashlife", "tiled"})
+    public String engine;
+
+    private World world;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        BenchmarkData.usePatternLibrary();
+        BenchmarkData.settings().setEngine(engine(engine));
+        BenchmarkData.settings().setHashLifeStep(0);
+
+        Pattern pattern = new PatternManager().getPattern(this.pattern);
+        if (pattern == null) throw new IllegalArgumentException("Unknown pattern '" + this.pattern + "'");
+
+        world = new World();
+        world.setCells(new Coordinates(0, 0), pattern.getCells());
+        world.setState(World.RUNNING);
+        while (world.getGeneration() < offset) {
+            world.advance(offset - world.getGeneration(), Duration.ofSeconds(10));
+        }
+        world.setState(World.PAUSED);
+
+        CellSet cells = new CellSet();
+        Snapshot snapshot = world.acquireSnapshot();
+        try {
+            cells.copyFrom(snapshot.getCells());
+        } finally {
+            snapshot.release();
+        }
+        world.setState(World.STOPPED);
+        world.setCells(cells);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        // Stopping restores the cells the simulation was started with
+        world.setState(World.STOPPED);
+        world.setState(World.RUNNING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.setState(World.STOPPED);
+        BenchmarkData.delete(BenchmarkData.usePatternLibrary());
+    }
+
+    @Benchmark
+    public long update() {
+        world.update();
+        return world.getGeneration();
+    }
+
+    private static int engine(String engine) {
+        switch (engine) {
+            case "hashlife":
+                return World.ENGINE_HASHLIFE;
+            case "tiled":
+                return World.ENGINE_TILED;
+            default:
+                return World.ENGINE_DEFAULT;
+        }
+    }
+}
@@ -2,11 +2,15 @@ package de.julianhofmann;
 
 import de.julianhofmann.ui.UI;
 import de.julianhofmann.util.Settings;
+import de.julianhofmann.util.TaskService;
 import de.julianhofmann.world.World;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 
 public class App extends Application {
 
@@ -14,9 +18,11 @@ public class App extends Application {
     public static UI ui;
     public static World world;
     public static Loop loop;
+    public static TaskService tasks;
 
     @Override
     public void start(Stage primaryStage) {
+        world.getControl().setFxMirror(true);
         loop = new Loop();
 
         ui = new UI(primaryStage);
@@ -35,7 +41,15 @@ public class App extends Application {
         settings = new Settings();
         settings.load();
 
+        tasks = new TaskService();
         world = new World();
+        registerMBean();
+
+        if (args.length > 0 && args[0].equals(Headless.FLAG)) {
+            int status = Headless.run(args);
+            tasks.shutdown();
+            System.exit(status);
+        }
 
         if (args.length > 0) {
             System.err.println("Opening '" + args[0] + "'...");
@@ -55,11 +69,20 @@ public class App extends Application {
         launch(args);
     }
 
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(world.getMetrics(), new ObjectName("de.julianhofmann:type=SimulationMetrics"));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static void exit() {
         world.setState(World.STOPPED);
         ui.getPrimaryStage().close();
         loop.stop();
         settings.save();
+        tasks.shutdown();
         System.exit(0);
     }
 }
\ No newline at end of file
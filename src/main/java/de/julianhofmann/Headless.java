@@ -0,0 +1,184 @@
+package de.julianhofmann;
+
+import de.julianhofmann.world.SimulationControl;
+import de.julianhofmann.world.SimulationMetrics;
+import de.julianhofmann.world.World;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Simulates a world file without starting JavaFX:
+ * <pre>
+ * --headless in.gol --generations 1000000 [--out out.gol] [--stats stats.csv] [--engine default|hashlife|tiled] [--threads n] [--stop-on-period]
+ * </pre>
+ * The progress is printed once per second and optionally written to a CSV file. With {@code --stop-on-period}
+ * the simulation ends as soon as the world repeats itself.
+ */
+public class Headless {
+    public static final String FLAG = "--headless";
+    private static final Duration REPORT_INTERVAL = Duration.ofSeconds(1);
+
+    private String in;
+    private String out;
+    private String stats;
+    private long generations = -1;
+
+    /**
+     * @return the exit code
+     */
+    public static int run(String[] args) {
+        Headless headless = new Headless();
+        try {
+            headless.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: " + FLAG + " <in.gol> --generations <n> [--out <out.gol>] [--stats <stats.csv>] [--engine default|hashlife|tiled] [--threads <n>] [--stop-on-period]");
+            return 1;
+        }
+        return headless.simulate();
+    }
+
+    private void parse(String[] args) {
+        App.settings.setPauseOnPeriod(false);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case FLAG:
+                    break;
+                case "--generations":
+                    generations = parseLong(args, ++i);
+                    break;
+                case "--out":
+                    out = value(args, ++i);
+                    break;
+                case "--stats":
+                    stats = value(args, ++i);
+                    break;
+                case "--engine":
+                    App.settings.setEngine(parseEngine(value(args, ++i)));
+                    break;
+                case "--threads":
+                    App.settings.setThreads((int) parseLong(args, ++i));
+                    break;
+                case "--stop-on-period":
+                    App.settings.setDetectPeriods(true);
+                    App.settings.setPauseOnPeriod(true);
+                    break;
+                default:
+                    if (args[i].startsWith("--") || in != null) throw new IllegalArgumentException("Unknown argument '" + args[i] + "'");
+                    in = args[i];
+            }
+        }
+        if (in == null) throw new IllegalArgumentException("No file provided");
+        if (generations < 0) throw new IllegalArgumentException("Missing --generations");
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for '" + args[i - 1] + "'");
+        return args[i];
+    }
+
+    private static long parseLong(String[] args, int i) {
+        try {
+            long value = Long.parseLong(value(args, i));
+            if (value < 0) throw new NumberFormatException();
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for '" + args[i - 1] + "': " + args[i]);
+        }
+    }
+
+    private static int parseEngine(String engine) {
+        switch (engine.toLowerCase(Locale.ROOT)) {
+            case "default":
+                return World.ENGINE_DEFAULT;
+            case "hashlife":
+                return World.ENGINE_HASHLIFE;
+            case "tiled":
+                return World.ENGINE_TILED;
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + engine + "'");
+        }
+    }
+
+    private int simulate() {
+        if (!new File(in).exists()) {
+            System.err.println("Couldn't open '" + in + "': No such file");
+            return 1;
+        }
+        World world = App.world;
+        if (!world.load(in)) {
+            System.err.println("Couldn't open '" + in + "'");
+            return 1;
+        }
+
+        BufferedWriter statsWriter = null;
+        try {
+            if (stats != null) {
+                statsWriter = new BufferedWriter(new FileWriter(stats));
+                statsWriter.write("seconds,generation,population,generations_per_second,step_p50_ns,step_p99_ns,cells_per_second,births,deaths,allocated_bytes_per_second\n");
+            }
+
+            SimulationControl control = world.getControl();
+            world.setState(World.RUNNING);
+            long start = System.nanoTime();
+            long lastReport = start;
+            long lastGeneration = 0;
+            long done = 0;
+            while (done < generations) {
+                // HashLife lowers its step towards the end, so the world stops exactly at the requested generation
+                long completed = world.advance(generations - done, REPORT_INTERVAL);
+                if (completed == 0) break;
+                done += completed;
+
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL.toNanos() || done >= generations) {
+                    double rate = (done - lastGeneration) * 1_000_000_000d / Math.max(now - lastReport, 1);
+                    control.setGenerationsPerSecond(rate);
+                    report(statsWriter, (now - start) / 1_000_000_000d, control.getMetrics(), world.getMetrics());
+                    lastReport = now;
+                    lastGeneration = done;
+                }
+            }
+            world.setState(World.PAUSED);
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+            System.err.printf(Locale.ROOT, "Computed %d generations in %.3f s (%.1f generations per second)%n",
+                    done, seconds, done / Math.max(seconds, 1e-9));
+            if (control.getPeriod() != null) System.err.println("The world is " + control.getPeriod());
+
+            if (out != null && !world.save(out)) {
+                System.err.println("Couldn't save '" + out + "'");
+                return 1;
+            }
+            return 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 1;
+        } finally {
+            if (statsWriter != null) {
+                try {
+                    statsWriter.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static void report(BufferedWriter statsWriter, double seconds, SimulationControl.Metrics metrics, SimulationMetrics steps) throws IOException {
+        System.err.printf(Locale.ROOT, "Generation %d, population %d, %.1f generations per second, step p50 %.3f ms, p99 %.3f ms%n",
+                metrics.getGeneration(), metrics.getPopulation(), metrics.getGenerationsPerSecond(),
+                steps.getStepNanosP50() / 1e6, steps.getStepNanosP99() / 1e6);
+        if (statsWriter != null) {
+            statsWriter.write(String.format(Locale.ROOT, "%.3f,%d,%d,%.1f,%d,%d,%.0f,%d,%d,%.0f\n", seconds, metrics.getGeneration(),
+                    metrics.getPopulation(), metrics.getGenerationsPerSecond(), steps.getStepNanosP50(), steps.getStepNanosP99(),
+                    steps.getCellsPerSecond(), steps.getBirths(), steps.getDeaths(), steps.getAllocatedBytesPerSecond()));
+            statsWriter.flush();
+        }
+    }
+}
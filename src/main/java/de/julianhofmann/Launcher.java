@@ -0,0 +1,12 @@
+package de.julianhofmann;
+
+/**
+ * Entry point of the jar. The java launcher refuses to start a main class that extends
+ * {@link javafx.application.Application} when JavaFX is on the class path instead of the module path,
+ * which would also prevent the headless mode from running.
+ */
+public class Launcher {
+    public static void main(String[] args) {
+        App.main(args);
+    }
+}
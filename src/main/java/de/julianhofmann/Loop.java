@@ -1,109 +1,83 @@
 package de.julianhofmann;
 
-import de.julianhofmann.ui.Renderer;
 import javafx.animation.AnimationTimer;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 
+import java.util.concurrent.Future;
+
 public class Loop {
     public static final int DEFAULT_UPDATE_DELAY = 100;
     private static final int PATTERN_LIST_REFRESH_DELAY = 5000;
     private final AnimationTimer drawTimer;
-    private final Thread updateThread, updatePatternListThread;
-    private boolean running;
+    private final Scheduler scheduler;
+    private Future<?> updatePatternList;
+    private volatile boolean running;
     private final IntegerProperty updateDelay = new SimpleIntegerProperty(DEFAULT_UPDATE_DELAY);
     private final IntegerProperty actualUpdateDelay = new SimpleIntegerProperty(updateDelay.get());
     private long lastActualUpdateDelayIndicatorUpdate;
-    private boolean finished;
-    private int drawTimerIterations;
-    private long deltaMillisCombined;
 
-    @SuppressWarnings("BusyWait")
     public Loop() {
         drawTimer = new AnimationTimer() {
             @Override
             public void handle(long timestamp) {
-                long startNanos = System.nanoTime();
                 if (App.ui.getPatternList().getPatternManager().isChanged()) {
                     App.ui.getPatternList().getPatternManager().setChanged(false);
                     App.ui.getPatternList().refresh();
                 }
 
-                Renderer renderer = App.ui.getContentPane().getRenderer();
-
-                if (!finished) {
-                    boolean firstRound = renderer.getDrawCells().isEmpty();
-                    if (firstRound) {
-                        renderer.collectCells();
-                    }
-
-                    finished = renderer.render(firstRound);
-                }
-
-                renderer.snapshot();
-
-                long deltaMillis = Math.round((System.nanoTime() - startNanos) / 1000000d);
-                deltaMillisCombined += deltaMillis;
-                drawTimerIterations ++;
-
-                if (finished) {
-                    long averageDeltaMillis = deltaMillisCombined / drawTimerIterations;
-                    int newMaxDrawCalls = (int) Math.round(((double) renderer.getMaxDrawCalls() / averageDeltaMillis * 15));
-                    if (newMaxDrawCalls > 10000 && newMaxDrawCalls < 1000000) {
-                        if (!(averageDeltaMillis < 15 && newMaxDrawCalls < renderer.getMaxDrawCalls())) {
-                            renderer.setMaxDrawCalls(newMaxDrawCalls);
-                        }
-                    }
-
-                    drawTimerIterations = 0;
-                    deltaMillisCombined = 0;
-
-                    App.ui.getContentPane().swapBuffers();
-                    App.ui.getContentPane().draw();
-                    finished = false;
-                }
+                // The cells are rasterized on other threads, the last finished frame is drawn
+                App.ui.getContentPane().getRenderer().render();
+                long compositeStart = System.nanoTime();
+                App.ui.getContentPane().draw();
+                App.ui.getContentPane().getRenderer().getMetrics().recordPulse(timestamp, System.nanoTime() - compositeStart);
             }
         };
 
-        updateThread = new Thread(() -> {
-            while (running) {
-                long startTime = System.nanoTime();
-                App.world.update();
-                long delay = updateDelay.get() - Math.round((System.nanoTime() - startTime) / 1000000d);
-                try {
-                    if (delay == 0) delay = 1;
-                    if (delay > 0) {
-                        Thread.sleep(delay);
-                    }
-                } catch (InterruptedException e) {
-                    App.exit();
-                }
-                setActualUpdateDelay((int) Math.round((System.nanoTime() - startTime) / 1000000d));
-            }
-        });
-
-        updatePatternListThread = new Thread(() -> {
-            while (running) {
-                App.ui.getPatternList().getPatternManager().refreshPatterns();
-                try {
-                    Thread.sleep(PATTERN_LIST_REFRESH_DELAY);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+        scheduler = new Scheduler(App.world, toGenerationsPerSecond(updateDelay.get()));
+        updateDelay.addListener((p, o, n) -> {
+            scheduler.setGenerationsPerSecond(toGenerationsPerSecond(n.intValue()));
+            updateActualUpdateDelay();
         });
+        App.world.getControl().generationsPerSecondProperty().addListener((p, o, n) -> updateActualUpdateDelay());
     }
 
     public void start() {
         running = true;
         drawTimer.start();
-        updateThread.start();
-        updatePatternListThread.start();
+        scheduler.start();
+        updatePatternList = App.tasks.runIo(this::updatePatternList);
     }
 
     public void stop() {
         drawTimer.stop();
         running = false;
+        scheduler.stop();
+        if (updatePatternList != null) updatePatternList.cancel(true);
+    }
+
+    @SuppressWarnings("BusyWait")
+    private void updatePatternList() {
+        while (running) {
+            App.ui.getPatternList().getPatternManager().refreshPatterns();
+            try {
+                Thread.sleep(PATTERN_LIST_REFRESH_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A delay of 0 means as fast as possible.
+     */
+    private static double toGenerationsPerSecond(int updateDelay) {
+        return updateDelay > 0 ? 1000d / updateDelay : Scheduler.UNCAPPED;
+    }
+
+    private void updateActualUpdateDelay() {
+        double generationsPerSecond = App.world.getControl().getMetrics().getGenerationsPerSecond();
+        setActualUpdateDelay(generationsPerSecond > 0 ? (int) Math.round(1000 / generationsPerSecond) : updateDelay.get());
     }
 
     public int getUpdateDelay() {
@@ -127,6 +101,7 @@ public class Loop {
     }
 
     private void setActualUpdateDelay(int actualUpdateDelay) {
+        if (actualUpdateDelay == this.actualUpdateDelay.get()) return;
         this.actualUpdateDelay.set(actualUpdateDelay);
         if (actualUpdateDelay > 100 || (System.nanoTime() - lastActualUpdateDelayIndicatorUpdate) / 1000000d > 100) {
             lastActualUpdateDelayIndicatorUpdate = System.nanoTime();
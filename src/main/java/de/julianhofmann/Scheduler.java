@@ -0,0 +1,148 @@
+package de.julianhofmann;
+
+import de.julianhofmann.world.World;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Advances the world on its own thread at a fixed rate. Generation n is due n / rate seconds after the
+ * schedule started, so if a generation takes longer than planned the following ticks run several
+ * generations to catch up. Without a target rate as many generations as possible are computed.
+ * The measured rate is published to the {@link de.julianhofmann.world.SimulationControl} of the world.
+ */
+public class Scheduler {
+    public static final double UNCAPPED = 0;
+    private static final Duration MAX_BATCH_DURATION = Duration.ofMillis(16);
+    private static final long MAX_LAG_NANOS = 250_000_000;
+    private static final long IDLE_NANOS = 5_000_000;
+    private static final long MEASURE_NANOS = 250_000_000;
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    private final World world;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile double generationsPerSecond;
+
+    // Only used by the scheduler thread
+    private double rate;
+    private long origin;
+    private long scheduled;
+    private long measureStart;
+    private long measuredGenerations;
+
+    public Scheduler(World world, double generationsPerSecond) {
+        this.world = world;
+        this.generationsPerSecond = generationsPerSecond;
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::run, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the scheduler and waits for the current batch of generations to finish.
+     */
+    public synchronized void stop() {
+        if (thread == null) return;
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        rate = generationsPerSecond;
+        restart(System.nanoTime());
+        measureStart = origin;
+
+        while (running) {
+            if (rate != generationsPerSecond) {
+                rate = generationsPerSecond;
+                restart(System.nanoTime());
+            }
+
+            long now = System.nanoTime();
+            long generations;
+            if (rate <= 0) {
+                generations = world.advance(Long.MAX_VALUE, MAX_BATCH_DURATION);
+            } else {
+                // Don't try to catch up forever if the world is simply too large for the rate
+                if (now - dueTime(scheduled) > MAX_LAG_NANOS) restart(now);
+
+                long due = dueGenerations(now) - scheduled;
+                if (due <= 0) {
+                    LockSupport.parkNanos(dueTime(scheduled) - now);
+                    continue;
+                }
+                generations = world.advance(due, MAX_BATCH_DURATION);
+                scheduled += generations;
+            }
+
+            if (generations == 0) {
+                // The world isn't running, so there is nothing to catch up on once it continues
+                if (world.getControl().getMetrics().getGenerationsPerSecond() != 0) {
+                    world.getControl().setGenerationsPerSecond(0);
+                }
+                measuredGenerations = 0;
+                LockSupport.parkNanos(IDLE_NANOS);
+                restart(System.nanoTime());
+                measureStart = origin;
+            } else {
+                measure(generations);
+            }
+        }
+    }
+
+    private void restart(long now) {
+        origin = now;
+        scheduled = 0;
+    }
+
+    /**
+     * The time at which generation {@code generation} of the current schedule is due.
+     */
+    private long dueTime(long generation) {
+        return origin + (long) (generation * 1_000_000_000d / rate);
+    }
+
+    /**
+     * The number of generations of the current schedule that are due at {@code now}.
+     */
+    private long dueGenerations(long now) {
+        return (long) ((now - origin) * rate / 1_000_000_000d) + 1;
+    }
+
+    private void measure(long generations) {
+        measuredGenerations += generations;
+        long now = System.nanoTime();
+        if (now - measureStart >= MEASURE_NANOS) {
+            world.getControl().setGenerationsPerSecond(measuredGenerations * 1_000_000_000d / (now - measureStart));
+            measuredGenerations = 0;
+            measureStart = now;
+        }
+    }
+
+    public double getGenerationsPerSecond() {
+        return generationsPerSecond;
+    }
+
+    /**
+     * Sets the target rate, {@link #UNCAPPED} computes as many generations as possible.
+     */
+    public void setGenerationsPerSecond(double generationsPerSecond) {
+        this.generationsPerSecond = Math.max(generationsPerSecond, UNCAPPED);
+    }
+}
@@ -8,18 +8,43 @@ import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.WritableImage;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.*;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
-
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The world is shown in layers that are only drawn again when something they show changes: the cells
+ * from the {@link Renderer}, the highlight of the cell below the cursor, the grid and the selection on
+ * the canvas, which also receives the input. Moving the mouse over a still world only moves the highlight.
+ * On top of everything the {@link RenderMetrics} can be shown.
+ */
 public class ContentPane {
+    private final Pane pane;
     private final Canvas canvas;
+    private final ImageView cellLayer = new ImageView();
+    private final Rectangle highlightLayer = new Rectangle();
+    private final Canvas gridLayer = new Canvas();
+    private final Label metricsLayer = new Label();
+    private long metricsUpdate;
+
+    // What the grid layer currently shows
+    private float gridCellSize, gridCameraX, gridCameraY, gridLayerOpacity;
+    private double gridWidth, gridHeight;
+    private Color gridLayerColor;
 
     private final BooleanProperty editing = new SimpleBooleanProperty(false);
     private final BooleanProperty draggingMiddle = new SimpleBooleanProperty(false);
     private final BooleanProperty cursorInArea = new SimpleBooleanProperty(false);
 
+    private static final long METRICS_UPDATE_NANOS = 250_000_000L;
+
     private float gridOpacity;
 
     private Color background, backgroundTransparent;
@@ -27,8 +52,6 @@ public class ContentPane {
     private Color foreground, foregroundTransparent;
     private Color highlight;
     private Color selection;
-    private WritableImage image;
-    private WritableImage backBuffer;
 
     private final float NO_MOUSE_POS = Float.MIN_VALUE;
     private float mouseX = NO_MOUSE_POS, mouseY = NO_MOUSE_POS;
@@ -42,12 +65,24 @@ public class ContentPane {
     private boolean activating;
 
     public ContentPane(Pane pane, Canvas canvas) {
+        this.pane = pane;
         this.canvas = canvas;
 
         canvas.widthProperty().bind(pane.widthProperty());
         canvas.heightProperty().bind(pane.heightProperty());
+        gridLayer.widthProperty().bind(pane.widthProperty());
+        gridLayer.heightProperty().bind(pane.heightProperty());
+        cellLayer.setMouseTransparent(true);
+        highlightLayer.setMouseTransparent(true);
+        gridLayer.setMouseTransparent(true);
+        pane.getChildren().addAll(0, List.of(cellLayer, highlightLayer, gridLayer));
+        metricsLayer.setMouseTransparent(true);
+        metricsLayer.setFont(Font.font("Monospaced", 11));
+        metricsLayer.setLayoutX(10);
+        metricsLayer.setLayoutY(10);
+        metricsLayer.visibleProperty().bind(App.settings.showRenderMetricsProperty());
+        pane.getChildren().add(metricsLayer);
 
-        swapBuffers();
         renderer = new Renderer(this);
 
         gridOpacity = 1;
@@ -63,6 +98,8 @@ public class ContentPane {
         App.settings.darkThemeProperty().addListener((p, oldValue, newValue) -> updateColors(newValue));
 
         selectionManager = new SelectionManager();
+        canvas.widthProperty().addListener((p, o, n) -> selectionManager.setChanged(true));
+        canvas.heightProperty().addListener((p, o, n) -> selectionManager.setChanged(true));
 
         canvas.addEventFilter(MouseEvent.MOUSE_PRESSED, this::mousePressed);
         canvas.addEventFilter(MouseEvent.MOUSE_RELEASED, this::mouseReleased);
@@ -85,21 +122,90 @@ public class ContentPane {
         });
     }
 
-    public void swapBuffers() {
-        image = backBuffer;
-        int width = (int)Math.ceil(canvas.getWidth());
-        int height = (int)Math.ceil(canvas.getHeight());
-        if (width <= 0) width = 1;
-        if (height <= 0) height = 1;
-        backBuffer = new WritableImage(width, height);
-    }
-
+    /**
+     * Updates the layers that have changed since the last frame.
+     */
     public void draw() {
-        if (image != null) {
+        cellLayer.setImage(renderer.getImage());
+        updateHighlight();
+        drawGrid();
+
+        if (selectionManager.isChanged()) {
+            selectionManager.setChanged(false);
             GraphicsContext gc = canvas.getGraphicsContext2D();
-            gc.setFill(background);
-            gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
-            gc.drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight());
+            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            selectionManager.draw(gc);
+        }
+
+        // Text layout is too expensive for every frame
+        if (metricsLayer.isVisible() && System.nanoTime() - metricsUpdate > METRICS_UPDATE_NANOS) {
+            metricsUpdate = System.nanoTime();
+            updateMetrics();
+        }
+    }
+
+    private void updateMetrics() {
+        RenderMetrics metrics = renderer.getMetrics();
+        metricsLayer.setText(String.format(Locale.ROOT,
+                "Bilder/s: %d (Takte/s: %d, wartend: %d)%n"
+                        + "Schnappschuss: %.2f ms | Rastern: %.2f/%.2f ms (p50/p99)%n"
+                        + "Hochladen: %.2f ms | Zusammensetzen: %.2f ms | Latenz: %.2f ms%n"
+                        + "Streifen: %d | Geänderte Pixel: %d%n"
+                        + "Übersprungene Generationen/s: %d",
+                metrics.getFramesPerSecond(), metrics.getPulsesPerSecond(), metrics.getWaitingPulses(),
+                metrics.getSnapshotNanosPercentile(50) / 1e6, metrics.getRasterizeNanosPercentile(50) / 1e6,
+                metrics.getRasterizeNanosPercentile(99) / 1e6, metrics.getUploadNanosPercentile(50) / 1e6,
+                metrics.getCompositeNanosPercentile(50) / 1e6, metrics.getLatencyNanosPercentile(50) / 1e6,
+                metrics.getLastStripes(), metrics.getLastChangedPixels(), metrics.getDroppedGenerations()));
+    }
+
+    private void updateHighlight() {
+        boolean visible = isEditing() && isCursorInArea() && !selectionManager.isSelecting(true);
+        highlightLayer.setVisible(visible);
+        if (visible) {
+            Coordinates coords = new Coordinates(mouseX, mouseY).toWorldCoordinates(App.world, false).toCanvasCoordinates(App.world);
+            highlightLayer.setX(coords.getX());
+            highlightLayer.setY(coords.getY());
+            highlightLayer.setWidth(App.world.getCellSize());
+            highlightLayer.setHeight(App.world.getCellSize());
+            highlightLayer.setFill(highlight);
+        }
+    }
+
+    private void drawGrid() {
+        float cellSize = App.world.getCellSize();
+        float cameraX = App.world.getCameraX();
+        float cameraY = App.world.getCameraY();
+        float opacity = Math.max(0, Math.min(1, gridOpacity));
+        // Lines closer than a pixel would only cover the cells
+        if (cellSize < 1) opacity = 0;
+        double width = gridLayer.getWidth();
+        double height = gridLayer.getHeight();
+        if (cellSize == gridCellSize && cameraX == gridCameraX && cameraY == gridCameraY && opacity == gridLayerOpacity
+                && width == gridWidth && height == gridHeight && grid == gridLayerColor) {
+            return;
+        }
+        gridCellSize = cellSize;
+        gridCameraX = cameraX;
+        gridCameraY = cameraY;
+        gridLayerOpacity = opacity;
+        gridWidth = width;
+        gridHeight = height;
+        gridLayerColor = grid;
+
+        GraphicsContext gc = gridLayer.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        if (opacity == 0) return;
+        gc.setStroke(new Color(grid.getRed(), grid.getGreen(), grid.getBlue(), opacity));
+
+        // Horizontal
+        for (float i = (Math.round(cameraY) % cellSize) - cellSize; i < height + cellSize; i += cellSize) {
+            gc.strokeLine(-cellSize, i, width + cellSize, i);
+        }
+
+        // Vertical
+        for (float i = (Math.round(cameraX) % cellSize) - cellSize; i < width + cellSize; i += cellSize) {
+            gc.strokeLine(i, -cellSize, i, height + cellSize);
         }
     }
 
@@ -235,6 +341,11 @@ public class ContentPane {
             highlight = new Color(0.5, 0.5, 0.5, 0.5);
             selection = new Color(0, 0.5, 0.8, 0.8);
         }
+        // Shown until the first frame of a new size is done
+        pane.setBackground(new Background(new BackgroundFill(background, null, null)));
+        metricsLayer.setTextFill(foreground);
+        metricsLayer.setBackground(new Background(new BackgroundFill(backgroundTransparent, null, null)));
+        if (selectionManager != null) selectionManager.setChanged(true);
     }
 
     private void updateCursor() {
@@ -315,10 +426,6 @@ public class ContentPane {
         return canvas;
     }
 
-    public WritableImage getBackBuffer() {
-        return backBuffer;
-    }
-
     public float getGridOpacity() {
         return gridOpacity;
     }
@@ -2,9 +2,11 @@ package de.julianhofmann.ui;
 
 import de.julianhofmann.App;
 import de.julianhofmann.util.PatternManager;
+import de.julianhofmann.util.TaskService;
 import de.julianhofmann.world.Pattern;
 import de.julianhofmann.world.PatternCategory;
 import de.julianhofmann.world.World;
+import javafx.concurrent.Task;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.TreeItem;
@@ -14,6 +16,7 @@ import javafx.scene.input.MouseButton;
 import javafx.scene.layout.BorderPane;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class PatternList {
 
@@ -89,20 +92,50 @@ public class PatternList {
                 return;
             }
             if (!(selectedItem.getValue() instanceof PatternCategory)) {
+                ArrayList<Pattern> changed = new ArrayList<>();
                 for (Pattern pattern : patternManager.getPatterns()) {
                     if (pattern.getCategory().equals(selectedItem.getValue().getCategory())) {
                         pattern.setCategory(name);
-                        if (!patternManager.savePattern(pattern.getName(), pattern.getCategory(), pattern.toJson())) {
-                            App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Kategorie konnte nicht geändert werden!");
-                            return;
-                        }
+                        changed.add(pattern);
                     }
                 }
+                savePatterns("Kategorie ändern...", changed, "Die Kategorie konnte nicht geändert werden!");
+            } else {
+                refresh();
             }
-            refresh();
         }
     }
 
+    /**
+     * Saves the patterns in the background and refreshes the list afterwards.
+     */
+    private void savePatterns(String title, List<Pattern> patterns, String error) {
+        Task<Boolean> task = new Task<>() {
+            {
+                updateTitle(title);
+            }
+
+            @Override
+            protected Boolean call() {
+                for (int i = 0; i < patterns.size() && !isCancelled(); i++) {
+                    Pattern pattern = patterns.get(i);
+                    if (!patternManager.savePattern(pattern.getName(), pattern.getCategory(), pattern.toJson())) {
+                        return false;
+                    }
+                    updateProgress(i + 1, patterns.size());
+                }
+                return true;
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (!task.getValue()) {
+                App.ui.alert(Alert.AlertType.ERROR, "Fehler", error);
+            }
+            refresh();
+        });
+        App.tasks.submitIo(task);
+    }
+
     public void renameTreeItem() {
         TreeItem<Pattern> selectedItem = treeView.getSelectionModel().getSelectedItem();
         if (selectedItem != null) {
@@ -111,31 +144,36 @@ public class PatternList {
                 return;
             }
             if (selectedItem.getValue() instanceof PatternCategory) {
+                ArrayList<Pattern> changed = new ArrayList<>();
                 for (Pattern pattern : patternManager.getPatterns()) {
                     if (pattern.getCategory().equals(selectedItem.getValue().getCategory())){
                         pattern.setCategory(name);
-                        if (!patternManager.savePattern(pattern.getName(), pattern.getCategory(), pattern.toJson())) {
-                            App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Kategorie konnte nicht umbenannt werden!");
-                            return;
-                        }
+                        changed.add(pattern);
                     }
                 }
+                savePatterns("Kategorie umbenennen...", changed, "Die Kategorie konnte nicht umbenannt werden!");
             } else {
                 if (!patternManager.nameExists(name)) {
-                    String oldName = selectedItem.getValue().getName();
-                    selectedItem.getValue().setName(name);
-                    if (!patternManager.savePattern(selectedItem.getValue().getName(), selectedItem.getValue().getCategory(), selectedItem.getValue().toJson())) {
-                        App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Struktur konnte nicht umbenannt werden!");
-                        return;
-                    } else {
-                        patternManager.deletePattern(new Pattern(oldName, selectedItem.getValue().getCategory(), selectedItem.getValue().getWidth(), selectedItem.getValue().getHeight(), selectedItem.getValue().getCells()));
-                    }
+                    Pattern pattern = selectedItem.getValue();
+                    Pattern old = new Pattern(pattern.getName(), pattern.getCategory(), pattern.getWidth(), pattern.getHeight(), pattern.getCells());
+                    pattern.setName(name);
+                    String json = pattern.toJson();
+                    Task<Boolean> task = TaskService.task("Umbenennen...", () -> {
+                        if (!patternManager.savePattern(name, pattern.getCategory(), json)) return false;
+                        patternManager.deletePattern(old);
+                        return true;
+                    });
+                    task.setOnSucceeded(e -> {
+                        if (!task.getValue()) {
+                            App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Struktur konnte nicht umbenannt werden!");
+                        }
+                        refresh();
+                    });
+                    App.tasks.submitIo(task);
                 } else {
                     App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Der Name existiert bereits!");
-                    return;
                 }
             }
-            refresh();
         }
     }
 
@@ -2,8 +2,14 @@ package de.julianhofmann.ui;
 
 import de.julianhofmann.App;
 import de.julianhofmann.Loop;
+import de.julianhofmann.util.TaskService;
 import de.julianhofmann.world.PatternCategory;
+import de.julianhofmann.world.PeriodDetector;
+import de.julianhofmann.world.Rule;
+import de.julianhofmann.world.SimulationMetrics;
 import de.julianhofmann.world.World;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.canvas.Canvas;
@@ -23,7 +29,9 @@ public class PrimaryController implements Initializable {
 
     public static final String iconsDir = getDataDir() + "/icons/";
 
-    @FXML private CheckMenuItem themeMenuItem;
+    @FXML private CheckMenuItem themeMenuItem, renderMetricsMenuItem;
+    @FXML private CheckMenuItem offHeapMenuItem;
+    @FXML private CheckMenuItem detectPeriodsMenuItem, pauseOnPeriodMenuItem;
     @FXML private Button playButton, pauseButton, stopButton;
     @FXML private HBox toolBar;
     @FXML private HBox leftPaneToolBar;
@@ -34,10 +42,15 @@ public class PrimaryController implements Initializable {
     @FXML private MenuItem rotateLeftMenuItem, rotateRightMenuItem, flipHorizontalMenuItem, flipVerticalMenuItem;
     @FXML private MenuItem undoMenuItem, redoMenuItem, copyMenuItem, cutMenuItem, pasteMenuItem, deleteMenuItem;
     @FXML private MenuItem playMenuItem, pauseMenuItem, stopMenuItem, fasterMenuItem, resetSpeedMenuItem;
+    @FXML private RadioMenuItem defaultEngineMenuItem, hashLifeEngineMenuItem, tiledEngineMenuItem;
+    @FXML private MenuItem changeRuleMenuItem;
     @FXML private MenuItem zoomInMenuItem, zoomOutMenuItem, resetZoomMenuItem, resetCameraMenuItem;
     @FXML private Text fileNameLabel;
     @FXML private BorderPane leftPane;
-    @FXML private Text delayIndicator, zoomIndicator;
+    @FXML private Text delayIndicator, zoomIndicator, metricsIndicator, periodIndicator;
+    @FXML private HBox taskBox;
+    @FXML private Text taskIndicator;
+    @FXML private ProgressBar taskProgressBar;
     @FXML private Button changeCategoryButton, renameTreeItemButton, deleteTreeItemButton;
 
     private ImageView playIcon, playIconDisabled, pauseIcon, pauseIconDisabled, stopIcon, stopIconDisabled;
@@ -111,6 +124,7 @@ public class PrimaryController implements Initializable {
         deleteIconDisabled.setPreserveRatio(true);
 
         App.world.stateProperty().addListener((p, o, n) -> updateToolBarButtons());
+        App.ui.openingProperty().addListener((p, o, n) -> updateToolBarButtons());
 
         App.settings.darkThemeProperty().addListener((p, o, n) -> updateColors(n));
 
@@ -135,13 +149,20 @@ public class PrimaryController implements Initializable {
 
     private void initSimulationMenu() {
         App.world.stateProperty().addListener((p, o, n) -> updateSimulationMenuItems());
+        App.ui.openingProperty().addListener((p, o, n) -> updateSimulationMenuItems());
         App.loop.updateDelayProperty().addListener((p, o, n) -> updateSimulationMenuItems());
         App.loop.actualUpdateDelayProperty().addListener((p, o, n) -> updateSimulationMenuItems());
+        App.settings.engineProperty().addListener((p, o, n) -> updateSimulationMenuItems());
+        offHeapMenuItem.selectedProperty().bindBidirectional(App.settings.offHeapProperty());
+        detectPeriodsMenuItem.selectedProperty().bindBidirectional(App.settings.detectPeriodsProperty());
+        pauseOnPeriodMenuItem.selectedProperty().bindBidirectional(App.settings.pauseOnPeriodProperty());
+        pauseOnPeriodMenuItem.disableProperty().bind(App.settings.detectPeriodsProperty().not());
         updateSimulationMenuItems();
     }
 
     private void initViewMenu() {
         themeMenuItem.selectedProperty().bindBidirectional(App.settings.darkThemeProperty());
+        renderMetricsMenuItem.selectedProperty().bindBidirectional(App.settings.showRenderMetricsProperty());
         App.world.cameraXProperty().addListener((p, o, n) -> updateViewMenuItems());
         App.world.cameraYProperty().addListener((p, o, n) -> updateViewMenuItems());
         App.world.cellSizeProperty().addListener((p, o, n) -> updateViewMenuItems());
@@ -153,14 +174,21 @@ public class PrimaryController implements Initializable {
         App.world.cellSizeProperty().addListener((p, o, n) -> updateStatusBar());
         App.world.cameraXProperty().addListener((p, o, n) -> updateStatusBar());
         App.world.cameraYProperty().addListener((p, o, n) -> updateStatusBar());
+        App.tasks.getTasks().addListener((ListChangeListener<Task<?>>) c -> updateTaskIndicator());
+        // The measured speed is published a few times per second while the simulation runs
+        App.world.getControl().generationsPerSecondProperty().addListener((p, o, n) -> updateMetricsIndicator());
+        App.world.getControl().stateProperty().addListener((p, o, n) -> updateMetricsIndicator());
+        App.world.getControl().periodProperty().addListener((p, o, n) -> updatePeriodIndicator());
         updateStatusBar();
+        updateMetricsIndicator();
+        updatePeriodIndicator();
     }
 
     /* ************************ ToolBar Action Methods ************************** */
 
     @FXML
     private void play() {
-        App.world.setState(World.RUNNING);
+        if (!App.ui.isOpening()) App.world.setState(World.RUNNING);
     }
 
     @FXML
@@ -222,9 +250,14 @@ public class PrimaryController implements Initializable {
             if (!App.ui.getPatternList().getPatternManager().nameExists(name)) {
                 String category = App.ui.inputDialog("Auswahl speichern", "Kategorie:", "");
                 if (!category.isBlank()) {
-                    if (!App.ui.getPatternList().getPatternManager().savePattern(name, category, App.ui.getContentPane().getSelectionManager().toJson(name, category))) {
-                        App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Struktur konnte nicht gespeichert werden!");
-                    }
+                    String json = App.ui.getContentPane().getSelectionManager().toJson(name, category);
+                    Task<Boolean> task = TaskService.task("Struktur speichern...", () -> App.ui.getPatternList().getPatternManager().savePattern(name, category, json));
+                    task.setOnSucceeded(e -> {
+                        if (!task.getValue()) {
+                            App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Die Struktur konnte nicht gespeichert werden!");
+                        }
+                    });
+                    App.tasks.submitIo(task);
                 }
             } else {
                 App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Der Name existiert bereits!");
@@ -321,6 +354,63 @@ public class PrimaryController implements Initializable {
         App.loop.setUpdateDelay(Loop.DEFAULT_UPDATE_DELAY);
     }
 
+    @FXML
+    private void useDefaultEngine() {
+        App.settings.setEngine(World.ENGINE_DEFAULT);
+    }
+
+    @FXML
+    private void useHashLifeEngine() {
+        App.settings.setEngine(World.ENGINE_HASHLIFE);
+    }
+
+    @FXML
+    private void useTiledEngine() {
+        App.settings.setEngine(World.ENGINE_TILED);
+    }
+
+    @FXML
+    private void changeHashLifeStep() {
+        String input = App.ui.inputDialog("HashLife-Schrittweite ändern", "Generationen pro Schritt (2^n), n:", Integer.toString(App.settings.getHashLifeStep()));
+        if (!input.isBlank()) {
+            try {
+                int step = Integer.parseInt(input);
+                if (step >= 0 && step <= World.MAX_HASHLIFE_STEP) {
+                    App.settings.setHashLifeStep(step);
+                    return;
+                }
+            } catch (NumberFormatException ignore) { }
+        }
+        App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Ungültige Schrittweite", ButtonType.OK);
+    }
+
+    @FXML
+    private void changeThreads() {
+        String input = App.ui.inputDialog("Threads ändern", "Threads (0 = alle Prozessoren):", Integer.toString(App.settings.getThreads()));
+        if (!input.isBlank()) {
+            try {
+                int threads = Integer.parseInt(input);
+                if (threads >= 0) {
+                    App.settings.setThreads(threads);
+                    return;
+                }
+            } catch (NumberFormatException ignore) { }
+        }
+        App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Ungültige Anzahl an Threads", ButtonType.OK);
+    }
+
+    @FXML
+    private void changeRule() {
+        String input = App.ui.inputDialog("Regel ändern", "Regel (z.B. B3/S23, B2/S/C3):", App.world.getRule().toString());
+        if (!input.isBlank()) {
+            try {
+                App.world.setRule(Rule.parse(input));
+                return;
+            } catch (IllegalArgumentException ignore) { }
+        }
+        App.ui.alert(Alert.AlertType.ERROR, "Fehler", "Ungültige Regel", ButtonType.OK);
+    }
+
     /* -------------------- View Menu -------------------------- */
 
     @FXML
@@ -345,6 +435,11 @@ public class PrimaryController implements Initializable {
         App.world.setCameraY(World.DEFAULT_CAMERA_Y);
     }
 
+    @FXML
+    private void exportRenderMetrics() {
+        App.ui.exportRenderMetrics();
+    }
+
     /* ************************ Update Methods ************************** */
 
     private void updateColors(boolean darkTheme) {
@@ -370,7 +465,7 @@ public class PrimaryController implements Initializable {
     }
 
     public void updateToolBarButtons() {
-        playButton.setDisable(App.world.getState() == World.RUNNING);
+        playButton.setDisable(App.world.getState() == World.RUNNING || App.ui.isOpening());
         playButton.setGraphic(playButton.isDisable() ? playIconDisabled : playIcon);
 
         pauseButton.setDisable(App.world.getState() != World.RUNNING);
@@ -419,12 +514,16 @@ public class PrimaryController implements Initializable {
     }
 
     private void updateSimulationMenuItems() {
-        playMenuItem.setDisable(App.world.getState() == World.RUNNING);
+        playMenuItem.setDisable(App.world.getState() == World.RUNNING || App.ui.isOpening());
         pauseMenuItem.setDisable(App.world.getState() != World.RUNNING);
         stopMenuItem.setDisable(App.world.getState() == World.STOPPED);
 
         fasterMenuItem.setDisable(App.loop.getUpdateDelay() == 0);
+        defaultEngineMenuItem.setSelected(App.settings.getEngine() == World.ENGINE_DEFAULT);
+        hashLifeEngineMenuItem.setSelected(App.settings.getEngine() == World.ENGINE_HASHLIFE);
+        tiledEngineMenuItem.setSelected(App.settings.getEngine() == World.ENGINE_TILED);
         resetSpeedMenuItem.setDisable(App.loop.getUpdateDelay() == Loop.DEFAULT_UPDATE_DELAY);
+        changeRuleMenuItem.setDisable(App.world.getState() != World.STOPPED);
     }
 
     private void updateViewMenuItems() {
@@ -434,6 +533,58 @@ public class PrimaryController implements Initializable {
         zoomInMenuItem.setDisable(App.world.getCellSize() == World.MAX_CELL_SIZE);
     }
 
+    /**
+     * Shows the oldest running task.
+     */
+    private void updateTaskIndicator() {
+        Task<?> task = App.tasks.getTasks().isEmpty() ? null : App.tasks.getTasks().get(0);
+        taskIndicator.textProperty().unbind();
+        taskProgressBar.progressProperty().unbind();
+        taskBox.setVisible(task != null);
+        taskBox.setManaged(task != null);
+        if (task != null) {
+            taskIndicator.textProperty().bind(task.titleProperty());
+            taskProgressBar.progressProperty().bind(task.progressProperty());
+        }
+    }
+
+    @FXML
+    private void cancelTask() {
+        if (!App.tasks.getTasks().isEmpty()) {
+            App.tasks.getTasks().get(0).cancel();
+        }
+    }
+
+    private void updateMetricsIndicator() {
+        SimulationMetrics metrics = App.world.getMetrics();
+        if (App.world.getState() == World.STOPPED || metrics.getSteps() == 0) {
+            metricsIndicator.setText("");
+            return;
+        }
+        String text = String.format("Population: %d | Schritt: %.2f/%.2f ms (p50/p99)", metrics.getPopulation(),
+                metrics.getStepNanosP50() / 1e6, metrics.getStepNanosP99() / 1e6);
+        double cellsPerSecond = metrics.getCellsPerSecond();
+        if (cellsPerSecond >= 0) text += String.format(" | %.1f Mio. Zellen/s", cellsPerSecond / 1e6);
+        if (metrics.getBirths() >= 0) text += " | +" + metrics.getBirths() + "/-" + metrics.getDeaths();
+        metricsIndicator.setText(text);
+    }
+
+    private void updatePeriodIndicator() {
+        PeriodDetector.Period period = App.world.getControl().getPeriod();
+        if (period == null) {
+            periodIndicator.setText("");
+        } else if (period.getPopulation() == 0) {
+            periodIndicator.setText("Ausgestorben in Generation " + period.getGeneration());
+        } else if (period.isMoving()) {
+            periodIndicator.setText("Periode " + period.getLength() + ", Verschiebung (" + period.getDx() + ", " + period.getDy()
+                    + ") ab Generation " + period.getGeneration());
+        } else if (period.getLength() == 1) {
+            periodIndicator.setText("Stabil ab Generation " + period.getGeneration());
+        } else {
+            periodIndicator.setText("Stabil: Periode " + period.getLength() + " ab Generation " + period.getGeneration());
+        }
+    }
+
     public void updateStatusBar() {
         delayIndicator.setText("Verzögerung: " + App.loop.getActualUpdateDelay() + "ms/" + App.loop.getUpdateDelay() + "ms");
         zoomIndicator.setText("Zoom: " + Math.round((App.world.getCellSize() * 10)) + "%");
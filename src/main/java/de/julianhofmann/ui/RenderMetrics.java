@@ -0,0 +1,218 @@
+package de.julianhofmann.ui;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records what the render pipeline did in every pulse of the FX thread for the last {@link #WINDOW} pulses:
+ * whether a frame was started, still being rasterized or shown, how long the stages took and how many
+ * generations the shown frames skipped. Pulses that wait for the rasterization point to render-bound stalls,
+ * idle pulses while the simulation runs to simulation-bound ones.
+ * <p>
+ * Durations that don't apply to a pulse are -1. Only used on the FX thread.
+ */
+public class RenderMetrics {
+    public static final int WINDOW = 4096;
+
+    // Nothing changed, a frame was started, a frame is still being rasterized or a rasterized frame was shown
+    public static final int IDLE = 0, STARTED = 1, WAITING = 2, SHOWN = 3;
+    private static final String[] STATES = {"idle", "started", "waiting", "shown"};
+
+    private final long[] times = new long[WINDOW];
+    private final int[] states = new int[WINDOW];
+    private final long[] snapshotNanos = new long[WINDOW];
+    private final long[] rasterizeNanos = new long[WINDOW];
+    private final long[] uploadNanos = new long[WINDOW];
+    private final long[] compositeNanos = new long[WINDOW];
+    private final long[] latencyNanos = new long[WINDOW];
+    private final int[] stripes = new int[WINDOW];
+    private final long[] changedPixels = new long[WINDOW];
+    private final long[] generations = new long[WINDOW];
+    private final long[] droppedGenerations = new long[WINDOW];
+    private int index;
+    private int count;
+
+    // The pulse that is being recorded
+    private int state;
+    private long snapshot = -1, rasterize = -1, upload = -1, latency = -1;
+    private int stripeCount;
+    private long changed, generation = -1, dropped;
+
+    /**
+     * A frame for a new snapshot or view was started.
+     */
+    void recordSnapshot(long nanos) {
+        if (state == IDLE) state = STARTED;
+        snapshot = nanos;
+    }
+
+    void recordWaiting() {
+        state = WAITING;
+    }
+
+    /**
+     * A rasterized frame was copied into the image.
+     *
+     * @param rasterizeNanos the duration of the slowest stripe
+     * @param latencyNanos   the time from starting the frame until it was copied
+     */
+    void recordShown(long rasterizeNanos, long uploadNanos, long latencyNanos, int stripes, long changedPixels,
+                     long generation, long droppedGenerations) {
+        state = SHOWN;
+        rasterize = rasterizeNanos;
+        upload = uploadNanos;
+        latency = latencyNanos;
+        stripeCount = stripes;
+        changed = changedPixels;
+        this.generation = generation;
+        dropped = droppedGenerations;
+    }
+
+    /**
+     * Ends the pulse.
+     *
+     * @param timestamp the time of the pulse in nanoseconds
+     */
+    public void recordPulse(long timestamp, long compositeNanos) {
+        times[index] = timestamp;
+        states[index] = state;
+        snapshotNanos[index] = snapshot;
+        rasterizeNanos[index] = rasterize;
+        uploadNanos[index] = upload;
+        this.compositeNanos[index] = compositeNanos;
+        latencyNanos[index] = latency;
+        stripes[index] = stripeCount;
+        changedPixels[index] = changed;
+        generations[index] = generation;
+        droppedGenerations[index] = dropped;
+        index = (index + 1) % WINDOW;
+        if (count < WINDOW) count++;
+
+        state = IDLE;
+        snapshot = rasterize = upload = latency = -1;
+        stripeCount = 0;
+        changed = 0;
+        generation = -1;
+        dropped = 0;
+    }
+
+    /**
+     * The slot of the pulse {@code age} pulses before the last one.
+     */
+    private int slot(int age) {
+        return (index + WINDOW - 1 - age) % WINDOW;
+    }
+
+    /**
+     * The number of the recorded pulses in the last second.
+     */
+    private int lastSecond() {
+        if (count == 0) return 0;
+        long end = times[slot(0)];
+        int pulses = 0;
+        while (pulses < count && end - times[slot(pulses)] < 1_000_000_000L) pulses++;
+        return pulses;
+    }
+
+    public int getPulsesPerSecond() {
+        return lastSecond();
+    }
+
+    public int getFramesPerSecond() {
+        return countStates(SHOWN);
+    }
+
+    /**
+     * The pulses of the last second that found the frame still being rasterized.
+     */
+    public int getWaitingPulses() {
+        return countStates(WAITING);
+    }
+
+    private int countStates(int state) {
+        int pulses = lastSecond();
+        int result = 0;
+        for (int age = 0; age < pulses; age++) {
+            if (states[slot(age)] == state) result++;
+        }
+        return result;
+    }
+
+    /**
+     * The generations the frames of the last second skipped.
+     */
+    public long getDroppedGenerations() {
+        int pulses = lastSecond();
+        long result = 0;
+        for (int age = 0; age < pulses; age++) result += droppedGenerations[slot(age)];
+        return result;
+    }
+
+    public long getSnapshotNanosPercentile(double percentile) {
+        return percentile(snapshotNanos, percentile);
+    }
+
+    public long getRasterizeNanosPercentile(double percentile) {
+        return percentile(rasterizeNanos, percentile);
+    }
+
+    public long getUploadNanosPercentile(double percentile) {
+        return percentile(uploadNanos, percentile);
+    }
+
+    public long getCompositeNanosPercentile(double percentile) {
+        return percentile(compositeNanos, percentile);
+    }
+
+    public long getLatencyNanosPercentile(double percentile) {
+        return percentile(latencyNanos, percentile);
+    }
+
+    /**
+     * The duration that {@code percentile} percent of the pulses in the window it applies to didn't exceed.
+     */
+    private long percentile(long[] values, double percentile) {
+        long[] nanos = new long[count];
+        int size = 0;
+        for (int age = 0; age < count; age++) {
+            long value = values[slot(age)];
+            if (value >= 0) nanos[size++] = value;
+        }
+        if (size == 0) return 0;
+        Arrays.sort(nanos, 0, size);
+        int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * size);
+        return nanos[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * The stripes and changed pixels of the last shown frame.
+     */
+    public int getLastStripes() {
+        for (int age = 0; age < count; age++) {
+            if (states[slot(age)] == SHOWN) return stripes[slot(age)];
+        }
+        return 0;
+    }
+
+    public long getLastChangedPixels() {
+        for (int age = 0; age < count; age++) {
+            if (states[slot(age)] == SHOWN) return changedPixels[slot(age)];
+        }
+        return 0;
+    }
+
+    /**
+     * The recorded pulses, oldest first, with the times in seconds since the first one.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("seconds,state,snapshot_ns,rasterize_ns,upload_ns,composite_ns,latency_ns,stripes,changed_pixels,generation,dropped_generations\n");
+        for (int age = count - 1; age >= 0; age--) {
+            int slot = slot(age);
+            csv.append(String.format(Locale.ROOT, "%.6f,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
+                    (times[slot] - times[slot(count - 1)]) / 1_000_000_000d, STATES[states[slot]], snapshotNanos[slot],
+                    rasterizeNanos[slot], uploadNanos[slot], compositeNanos[slot], latencyNanos[slot], stripes[slot],
+                    changedPixels[slot], generations[slot], droppedGenerations[slot]));
+        }
+        return csv.toString();
+    }
+}
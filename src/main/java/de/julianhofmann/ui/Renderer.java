@@ -1,119 +1,428 @@
 package de.julianhofmann.ui;
 
 import de.julianhofmann.App;
-import de.julianhofmann.world.Coordinates;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import de.julianhofmann.world.CellSet;
+import de.julianhofmann.world.DensityPyramid;
+import de.julianhofmann.world.GenerationDiff;
+import de.julianhofmann.world.Snapshot;
+import de.julianhofmann.world.TileIndex;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
-import java.util.*;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Rasterizes the cells straight into the pixels of an image, so a whole frame is rendered at once
+ * however many cells are visible. The {@link ContentPane} shows it below the grid, highlight and selection.
+ * Only the visible cells are looked at if the snapshot has a {@link TileIndex}.
+ * <p>
+ * The frames are rasterized on the CPU threads of {@link App#tasks}, split into horizontal stripes if the
+ * cells of a stripe can be found without looking at all cells. The FX thread only starts a frame and copies
+ * it into the image once it is done, it never waits for it, so input stays responsive during heavy frames.
+ * <p>
+ * When a block of at least 2x2 cells fits into a pixel, the pixels are shaded by the number of living
+ * cells they cover. A new generation is counted cell by cell, which is cheaper than building the
+ * {@link DensityPyramid}. If the same generation is drawn again, e.g. while moving or zooming a paused
+ * world, the pyramid is used, so these frames cost time in proportion to the pixels instead of the cells.
+ * <p>
+ * The pixels are kept between frames. If the view hasn't changed and the snapshot knows which cells changed
+ * since the last drawn one, only their pixels are updated, so a gun or puffer in a still view costs time in
+ * proportion to its births and deaths. Everything else, like moving, zooming or skipped snapshots, redraws the frame.
+ */
 public class Renderer {
-    private int maxDrawCalls = 10000;
+    private static final int STRIPES = Runtime.getRuntime().availableProcessors();
+
     private final ContentPane contentPane;
-    private final Canvas canvas;
-    private final LinkedList<Coordinates> drawCells;
+    private final RenderMetrics metrics = new RenderMetrics();
+    private long shownGeneration = -1;
+
+    // The pixels of the image, only touched by the FX thread
+    private int[] front;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+
+    // The frame that is being rasterized and its pixels, which are only resized while no frame is running
+    private Frame frame;
+    private int width, height;
+    private int[] pixels;
+    private int[] densities;
+
+    // What the pixels currently show
+    private boolean valid;
+    private long lastSequence = -1;
+    private float lastCellSize, lastCameraX, lastCameraY;
+    private int lastForeground, lastBackground;
+    private boolean cellDensities;
 
     public Renderer(ContentPane contentPane) {
         this.contentPane = contentPane;
-        canvas = new Canvas(contentPane.getBackBuffer().getWidth(), contentPane.getBackBuffer().getHeight());
-        drawCells = new LinkedList<>();
     }
 
-    public void collectCells() {
-        final int width = (int) Math.ceil(canvas.getWidth());
-        final int height = (int) Math.ceil(canvas.getHeight());
-        App.world.getCellsReadLock().lock();
-        HashMap<Coordinates, Byte> cells = App.world.getCells();
+    /**
+     * Shows the last rasterized frame and starts rasterizing the latest generation if the last one is done.
+     * Has to be called on the JavaFX application thread.
+     */
+    public void render() {
+        if (frame != null) {
+            if (!frame.isDone()) {
+                metrics.recordWaiting();
+                return;
+            }
+            finish(frame);
+            frame = null;
+        }
+
+        boolean resized = resize((int) Math.ceil(contentPane.getCanvas().getWidth()), (int) Math.ceil(contentPane.getCanvas().getHeight()));
+        final float cellSize = App.world.getCellSize();
+        final float cameraX = App.world.getCameraX();
+        final float cameraY = App.world.getCameraY();
+        final int foreground = toArgb(contentPane.getForeground());
+        final int background = toArgb(contentPane.getBackground());
+        final int level = densityLevel(cellSize);
+        boolean viewChanged = resized || !valid || cellSize != lastCellSize || cameraX != lastCameraX || cameraY != lastCameraY
+                || foreground != lastForeground || background != lastBackground;
+
+        long snapshotStart = System.nanoTime();
+        Snapshot snapshot = App.world.acquireSnapshot();
+        if (!viewChanged && snapshot.getSequence() == lastSequence) {
+            snapshot.release();
+            return;
+        }
+        metrics.recordSnapshot(System.nanoTime() - snapshotStart);
+
+        boolean drawnAgain = snapshot.getSequence() == lastSequence;
+        Frame frame = new Frame(snapshot, level, cellSize, cameraX, cameraY, background, foreground);
+        GenerationDiff diff = snapshot.getDiff();
         try {
-            for (Map.Entry<Coordinates, Byte> entry : cells.entrySet()) {
-                Coordinates coordinates = entry.getKey();
-                Byte value = entry.getValue();
-                if (value == 1) {
-                    Coordinates windowCoords = coordinates.toCanvasCoordinates(App.world);
-                    if (windowCoords.getX() >= -App.world.getCellSize() && windowCoords.getX() <= width + App.world.getCellSize() && windowCoords.getY() >= -App.world.getCellSize() && windowCoords.getY() <= height + App.world.getCellSize()) {
-                        drawCells.push(windowCoords);
-                    }
+            // Cells smaller than a pixel may share it with their neighbors, so a death can't just clear its pixels
+            if (!viewChanged && diff != null && diff.getBaseSequence() == lastSequence && (level > 0 ? cellDensities : cellSize >= 1)) {
+                frame.patching = true;
+                frame.start(() -> patch(frame, diff));
+            } else {
+                frame.markDirty(0, 0, width, height);
+                if (level > 0) cellDensities = !drawnAgain;
+                boolean pyramid = level > 0 && drawnAgain;
+
+                // Without an index every stripe would have to look at all cells
+                int stripes = snapshot.isIndexed() || drawnAgain ? Math.min(STRIPES, height) : 1;
+                for (int i = 0; i < stripes; i++) {
+                    int top = height * i / stripes;
+                    int bottom = height * (i + 1) / stripes;
+                    frame.start(() -> redraw(frame, pyramid, drawnAgain, top, bottom));
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         } finally {
-            App.world.getCellsReadLock().unlock();
+            this.frame = frame;
+            lastSequence = snapshot.getSequence();
+            lastCellSize = cellSize;
+            lastCameraX = cameraX;
+            lastCameraY = cameraY;
+            lastForeground = foreground;
+            lastBackground = background;
         }
     }
 
-    public boolean render(boolean firstRound) {
-        canvas.setWidth(contentPane.getBackBuffer().getWidth());
-        canvas.setHeight(contentPane.getBackBuffer().getHeight());
+    /**
+     * Copies the changed pixels of a rasterized frame into the image.
+     */
+    private void finish(Frame frame) {
+        valid = true;
+        for (Future<?> stripe : frame.stripes) {
+            try {
+                stripe.get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                valid = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                valid = false;
+            }
+        }
+        frame.snapshot.release();
+        if (!valid) frame.markDirty(0, 0, width, height);
 
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        final int width = (int) Math.ceil(canvas.getWidth());
-        final int height = (int) Math.ceil(canvas.getHeight());
+        long uploadStart = System.nanoTime();
 
-        if (firstRound) {
-            gc.setFill(contentPane.getBackground());
-            gc.fillRect(0, 0, width, height);
+        if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+            front = new int[width * height];
+            pixelBuffer = new PixelBuffer<>(width, height, IntBuffer.wrap(front), PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(pixelBuffer);
+            frame.markDirty(0, 0, width, height);
         }
+        if (frame.dirtyLeft < frame.dirtyRight && frame.dirtyTop < frame.dirtyBottom) {
+            Rectangle2D region = new Rectangle2D(frame.dirtyLeft, frame.dirtyTop, frame.dirtyRight - frame.dirtyLeft, frame.dirtyBottom - frame.dirtyTop);
+            pixelBuffer.updateBuffer(buffer -> {
+                for (int row = frame.dirtyTop; row < frame.dirtyBottom; row++) {
+                    System.arraycopy(pixels, row * width + frame.dirtyLeft, front, row * width + frame.dirtyLeft, frame.dirtyRight - frame.dirtyLeft);
+                }
+                return region;
+            });
+        }
+        long now = System.nanoTime();
 
-        gc.setFill(contentPane.getForeground());
-
-        int frameDrawCalls = 0;
+        long generation = frame.snapshot.getGeneration();
+        long dropped = shownGeneration >= 0 && generation > shownGeneration + 1 ? generation - shownGeneration - 1 : 0;
+        shownGeneration = generation;
+        long changedPixels = frame.dirtyLeft < frame.dirtyRight && frame.dirtyTop < frame.dirtyBottom
+                ? (long) (frame.dirtyRight - frame.dirtyLeft) * (frame.dirtyBottom - frame.dirtyTop) : 0;
+        metrics.recordShown(frame.rasterizeNanos.get(), now - uploadStart, now - frame.started, frame.stripes.size(),
+                changedPixels, generation, dropped);
+    }
 
-        // Cells
-        while (frameDrawCalls < maxDrawCalls && !drawCells.isEmpty()) {
-            Coordinates coordinates = drawCells.pop();
-            gc.fillRect(coordinates.getX(), coordinates.getY(), App.world.getCellSize(), App.world.getCellSize());
-            frameDrawCalls++;
+    /**
+     * Rasterizes the rows from {@code top} to {@code bottom}, exclusive.
+     */
+    private void redraw(Frame frame, boolean pyramid, boolean drawnAgain, int top, int bottom) {
+        Arrays.fill(pixels, top * width, bottom * width, frame.background);
+        if (frame.level > 0) {
+            Arrays.fill(densities, top * width, bottom * width, 0);
+            if (pyramid) {
+                addDensities(frame, frame.snapshot.getDensity(), top, bottom);
+            } else {
+                forEachVisibleCell(frame, drawnAgain, top, bottom,
+                        (x, y) -> addDensity(x * frame.cellSize + frame.cameraX, y * frame.cellSize + frame.cameraY, 1, top, bottom));
+            }
+            shade(frame, top, bottom);
+            return;
         }
 
-        boolean finished = drawCells.isEmpty();
+        forEachVisibleCell(frame, drawnAgain, top, bottom, (x, y) -> fillCell(frame, x, y, top, bottom, frame.foreground));
+    }
 
-        if (finished) {
-            // Highlight
-            if (contentPane.isEditing() && contentPane.isCursorInArea() && !contentPane.getSelectionManager().isSelecting(true)) {
-                Coordinates coords = new Coordinates(contentPane.getMouseX(), contentPane.getMouseY()).toWorldCoordinates(App.world, false).toCanvasCoordinates(App.world);
-                gc.setFill(contentPane.getHighlight());
-                gc.fillRect(coords.getX(), coords.getY(), App.world.getCellSize(), App.world.getCellSize());
+    /**
+     * Applies the births and deaths since the last drawn snapshot to the pixels.
+     */
+    private void patch(Frame frame, GenerationDiff diff) {
+        if (frame.level > 0) {
+            for (long key : diff.getDeaths()) {
+                patchDensity(frame, CellSet.x(key) * frame.cellSize + frame.cameraX, CellSet.y(key) * frame.cellSize + frame.cameraY, -1);
             }
+            for (long key : diff.getBirths()) {
+                patchDensity(frame, CellSet.x(key) * frame.cellSize + frame.cameraX, CellSet.y(key) * frame.cellSize + frame.cameraY, 1);
+            }
+            return;
+        }
 
-            // Grid
-            Color gridColor = contentPane.getGrid();
-            float gridOpacity = contentPane.getGridOpacity();
-            if (gridOpacity > 1) gridOpacity = 1;
-            else if (gridOpacity < 0) gridOpacity = 0;
-            gc.setStroke(new Color(gridColor.getRed(), gridColor.getGreen(), gridColor.getBlue(), gridOpacity));
+        for (long key : diff.getDeaths()) {
+            fillCell(frame, CellSet.x(key), CellSet.y(key), 0, height, frame.background);
+        }
+        for (long key : diff.getBirths()) {
+            fillCell(frame, CellSet.x(key), CellSet.y(key), 0, height, frame.foreground);
+        }
+    }
+
+    /**
+     * The highest level of the density pyramid whose blocks fit into a pixel or 0 if the cells are drawn one by one.
+     */
+    private static int densityLevel(float cellSize) {
+        int level = 0;
+        while (level < DensityPyramid.LEVELS && cellSize * (2 << level) <= 1) level++;
+        return level;
+    }
 
-            // Horizontal
-            for (float i = (Math.round(App.world.getCameraY()) % App.world.getCellSize()) - App.world.getCellSize(); i < height + App.world.getCellSize(); i += App.world.getCellSize()) {
-                gc.strokeLine(-App.world.getCellSize(), i, width + App.world.getCellSize(), i);
+    /**
+     * Only looks at the cells of the rows if the snapshot has an index or is drawn again, otherwise building the index
+     * would cost more than looking at all cells once. The cells next to the rows are included, as they may reach into them.
+     */
+    private void forEachVisibleCell(Frame frame, boolean drawnAgain, int top, int bottom, TileIndex.CellConsumer consumer) {
+        int minX = (int) Math.floor(-frame.cameraX / frame.cellSize) - 1;
+        int minY = (int) Math.floor((top - frame.cameraY) / frame.cellSize) - 1;
+        int maxX = (int) Math.floor((width - frame.cameraX) / frame.cellSize);
+        int maxY = (int) Math.floor((bottom - frame.cameraY) / frame.cellSize);
+        if (frame.snapshot.isIndexed() || drawnAgain) {
+            frame.snapshot.forEachLiveInRect(minX, minY, maxX, maxY, consumer);
+            return;
+        }
+
+        CellSet cells = frame.snapshot.getCells();
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) {
+                int x = CellSet.x(cells.keyAt(slot));
+                int y = CellSet.y(cells.keyAt(slot));
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) consumer.accept(x, y);
             }
+        }
+    }
 
-            // Vertical
-            for (float i = (Math.round(App.world.getCameraX()) % App.world.getCellSize()) - App.world.getCellSize(); i < width + App.world.getCellSize(); i += App.world.getCellSize()) {
-                gc.strokeLine(i, -App.world.getCellSize(), i, height + App.world.getCellSize());
+    private void addDensities(Frame frame, DensityPyramid density, int top, int bottom) {
+        final int level = frame.level;
+        final float blockSize = frame.cellSize * (1 << level);
+
+        // Every block is added to the pixel of its top left corner
+        int minX = (int) Math.floor(-frame.cameraX / blockSize);
+        int minY = (int) Math.floor((top - frame.cameraY) / blockSize);
+        int maxX = (int) Math.floor((width - frame.cameraX) / blockSize);
+        int maxY = (int) Math.floor((bottom - frame.cameraY) / blockSize);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) < density.size(level)) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    int count = density.get(level, x, y);
+                    if (count != 0) addDensity(x * blockSize + frame.cameraX, y * blockSize + frame.cameraY, count, top, bottom);
+                }
             }
+        } else {
+            density.forEach(level, (x, y, count) -> addDensity(x * blockSize + frame.cameraX, y * blockSize + frame.cameraY, count, top, bottom));
+        }
+    }
 
-            // Selection
-            contentPane.getSelectionManager().draw(gc);
+    private void shade(Frame frame, int top, int bottom) {
+        for (int i = top * width; i < bottom * width; i++) {
+            if (densities[i] != 0) shadePixel(frame, i);
         }
+    }
+
+    /**
+     * A pixel with a single living cell is drawn half opaque, a pixel that is at least half full is opaque.
+     */
+    private void shadePixel(Frame frame, int i) {
+        if (densities[i] == 0) {
+            pixels[i] = frame.background;
+        } else {
+            float cellsPerPixel = 1 / (frame.cellSize * frame.cellSize);
+            float alpha = Math.min(1, 0.5f + densities[i] / cellsPerPixel);
+            pixels[i] = blend(frame.background, frame.foreground, alpha);
+        }
+    }
 
-        return finished;
+    private void addDensity(float windowX, float windowY, int count, int top, int bottom) {
+        if (windowX >= 0 && windowX < width && windowY >= top && windowY < bottom) {
+            densities[(int) windowY * width + (int) windowX] += count;
+        }
+    }
+
+    private void patchDensity(Frame frame, float windowX, float windowY, int count) {
+        if (windowX >= 0 && windowX < width && windowY >= 0 && windowY < height) {
+            int i = (int) windowY * width + (int) windowX;
+            densities[i] += count;
+            shadePixel(frame, i);
+            frame.markDirty((int) windowX, (int) windowY, (int) windowX + 1, (int) windowY + 1);
+        }
+    }
+
+    /**
+     * Cells smaller than a pixel still cover one pixel. The edges are computed the same way for neighboring
+     * cells, so larger cells never overlap and a changed cell can be filled again on its own.
+     * Only the rows from {@code top} to {@code bottom} are filled.
+     */
+    private void fillCell(Frame frame, int x, int y, int top, int bottom, int color) {
+        int left = (int) Math.floor(x * frame.cellSize + frame.cameraX);
+        int cellTop = (int) Math.floor(y * frame.cellSize + frame.cameraY);
+        int right = Math.max((int) Math.floor((x + 1) * frame.cellSize + frame.cameraX), left + 1);
+        int cellBottom = Math.max((int) Math.floor((y + 1) * frame.cellSize + frame.cameraY), cellTop + 1);
+        if (left < 0) left = 0;
+        if (cellTop < top) cellTop = top;
+        if (right > width) right = width;
+        if (cellBottom > bottom) cellBottom = bottom;
+        if (left >= right || cellTop >= cellBottom) return;
+        for (int row = cellTop; row < cellBottom; row++) {
+            Arrays.fill(pixels, row * width + left, row * width + right, color);
+        }
+        if (frame.patching) frame.markDirty(left, cellTop, right, cellBottom);
     }
 
-    public void snapshot() {
-        canvas.snapshot(null, contentPane.getBackBuffer());
+    public RenderMetrics getMetrics() {
+        return metrics;
     }
 
-    public LinkedList<Coordinates> getDrawCells() {
-        return drawCells;
+    /**
+     * The last rasterized frame or null before the first one is done.
+     */
+    public WritableImage getImage() {
+        return image;
     }
 
-    public int getMaxDrawCalls() {
-        return maxDrawCalls;
+    /**
+     * The image keeps its size until the first frame with the new size is done.
+     *
+     * @return whether the pixels have been reallocated
+     */
+    private boolean resize(int width, int height) {
+        if (width <= 0) width = 1;
+        if (height <= 0) height = 1;
+        if (pixels != null && width == this.width && height == this.height) return false;
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        densities = new int[width * height];
+        return true;
     }
 
-    public void setMaxDrawCalls(int maxDrawCalls) {
-        this.maxDrawCalls = maxDrawCalls;
+    private static int blend(int background, int foreground, float alpha) {
+        int result = 0xFF000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int from = background >> shift & 0xFF;
+            int to = foreground >> shift & 0xFF;
+            result |= Math.round(from + (to - from) * alpha) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * The pixel format of the image has premultiplied alpha.
+     */
+    private static int toArgb(Color color) {
+        double alpha = color.getOpacity();
+        return (int) Math.round(alpha * 255) << 24
+                | (int) Math.round(color.getRed() * alpha * 255) << 16
+                | (int) Math.round(color.getGreen() * alpha * 255) << 8
+                | (int) Math.round(color.getBlue() * alpha * 255);
+    }
+
+    /**
+     * The view a frame is rasterized for and the region of the pixels it changed.
+     */
+    private static final class Frame {
+        private final Snapshot snapshot;
+        private final int level;
+        private final float cellSize, cameraX, cameraY;
+        private final int background, foreground;
+        private final List<Future<?>> stripes = new ArrayList<>();
+        private final long started = System.nanoTime();
+        // The duration of the slowest stripe
+        private final AtomicLong rasterizeNanos = new AtomicLong();
+        // Only a patch marks the pixels it changes, it runs as a single task
+        private boolean patching;
+        private int dirtyLeft = Integer.MAX_VALUE, dirtyTop = Integer.MAX_VALUE, dirtyRight, dirtyBottom;
+
+        private Frame(Snapshot snapshot, int level, float cellSize, float cameraX, float cameraY, int background, int foreground) {
+            this.snapshot = snapshot;
+            this.level = level;
+            this.cellSize = cellSize;
+            this.cameraX = cameraX;
+            this.cameraY = cameraY;
+            this.background = background;
+            this.foreground = foreground;
+        }
+
+        private void start(Runnable stripe) {
+            stripes.add(App.tasks.runCpu(() -> {
+                long start = System.nanoTime();
+                stripe.run();
+                rasterizeNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+            }));
+        }
+
+        private boolean isDone() {
+            for (Future<?> stripe : stripes) {
+                if (!stripe.isDone()) return false;
+            }
+            return true;
+        }
+
+        private void markDirty(int left, int top, int right, int bottom) {
+            if (left < dirtyLeft) dirtyLeft = left;
+            if (top < dirtyTop) dirtyTop = top;
+            if (right > dirtyRight) dirtyRight = right;
+            if (bottom > dirtyBottom) dirtyBottom = bottom;
+        }
     }
 }
@@ -22,6 +22,7 @@ public class SelectionManager {
     private boolean deleted, pasted;
     private final BooleanProperty selecting = new SimpleBooleanProperty(false);
     private final BooleanProperty clipboardEmpty = new SimpleBooleanProperty(true);
+    private boolean changed = true;
 
     public void draw(GraphicsContext gc) {
         if (isSelecting(true)) {
@@ -45,6 +46,7 @@ public class SelectionManager {
     }
     
     public void snap() {
+        changed = true;
         if (start != null)
             start = start.toWorldCoordinates(App.world, true).toCanvasCoordinates(App.world);
         if (end != null)
@@ -52,6 +54,7 @@ public class SelectionManager {
     }
 
     public void select() {
+        changed = true;
         App.world.getUndoManager().newUndoStage();
         Coordinates start = new Coordinates(Math.min(this.start.getX(), this.end.getX()), Math.min(this.start.getY(), this.end.getY()));
         Coordinates end = new Coordinates(Math.max(this.start.getX(), this.end.getX()), Math.max(this.start.getY(), this.end.getY()));
@@ -64,6 +67,7 @@ public class SelectionManager {
     }
 
     public void finish() {
+        changed = true;
         snap();
         if (isSelecting(false)) {
             Coordinates start = new Coordinates(Math.min(this.start.getX(), this.end.getX()), Math.min(this.start.getY(), this.end.getY()));
@@ -82,6 +86,7 @@ public class SelectionManager {
     }
 
     public void cancel() {
+        changed = true;
         snap();
         if (isSelecting(false)) {
             App.world.setCells(originalPos.toWorldCoordinates(App.world, true), selectedCells);
@@ -96,6 +101,7 @@ public class SelectionManager {
     }
 
     public void rotateRight() {
+        changed = true;
         if (isSelecting(false)) {
             HashMap<Coordinates, Byte> cellsCache = new HashMap<>();
 
@@ -146,6 +152,7 @@ public class SelectionManager {
     }
 
     public void rotateLeft() {
+        changed = true;
         if (isSelecting(false)) {
             HashMap<Coordinates, Byte> cellsCache = new HashMap<>();
 
@@ -197,6 +204,7 @@ public class SelectionManager {
     }
 
     public void flipHorizontal() {
+        changed = true;
         if (isSelecting(false)) {
             HashMap<Coordinates, Byte> newSelectedCells = new HashMap<>();
             Coordinates size = new Coordinates(getSize().getX() / App.world.getCellSize(), getSize().getY() / App.world.getCellSize());
@@ -206,6 +214,7 @@ public class SelectionManager {
     }
 
     public void flipVertical() {
+        changed = true;
         if (isSelecting(false)) {
             HashMap<Coordinates, Byte> newSelectedCells = new HashMap<>();
             Coordinates size = new Coordinates(getSize().getX() / App.world.getCellSize(), getSize().getY() / App.world.getCellSize());
@@ -249,6 +258,7 @@ public class SelectionManager {
 
     @SuppressWarnings("unchecked")
     public void paste() {
+        changed = true;
         if (clipboard != null && clipboardSize != null) {
             finish();
             float mouseX = App.ui.getContentPane().getMouseX();
@@ -269,14 +279,17 @@ public class SelectionManager {
     }
 
     public void setStart(Coordinates start) {
+        changed = true;
         this.start = start;
     }
 
     public void setEnd(Coordinates end) {
+        changed = true;
         this.end = end;
     }
 
     public void move(Coordinates delta, boolean dragging) {
+        changed = true;
         if (isSelecting(true)) {
             start.setX(start.getX() + delta.getX());
             start.setY(start.getY() + delta.getY());
@@ -307,12 +320,14 @@ public class SelectionManager {
     }
 
     public void setDragging(boolean dragging) {
+        changed = true;
         this.dragging.set(dragging);
         if (!dragging)
             snap();
     }
 
     public void beforeCellResize() {
+        changed = true;
         if (isSelecting(true)) {
             start = start.toWorldCoordinates(App.world, true);
             end = end.toWorldCoordinates(App.world, true);
@@ -321,6 +336,7 @@ public class SelectionManager {
     }
 
     public void afterCellResize() {
+        changed = true;
         if (isSelecting(true)) {
             start = start.toCanvasCoordinates(App.world);
             end = end.toCanvasCoordinates(App.world);
@@ -344,6 +360,7 @@ public class SelectionManager {
     }
 
     public void spawnPattern(Pattern pattern) {
+        changed = true;
         if (App.world.getState() != World.RUNNING) {
             finish();
 
@@ -376,6 +393,17 @@ public class SelectionManager {
         return new Coordinates(getDrawEnd().getX() - getDrawStart().getX(), getDrawEnd().getY() - getDrawStart().getY());
     }
 
+    /**
+     * Whether the selection has to be drawn again.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
     public BooleanProperty selectingProperty() {
         return selecting;
     }
@@ -1,8 +1,13 @@
 package de.julianhofmann.ui;
 
 import de.julianhofmann.App;
+import de.julianhofmann.util.TaskService;
+import de.julianhofmann.world.Snapshot;
 import de.julianhofmann.world.World;
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Cursor;
 import javafx.scene.Parent;
@@ -17,7 +22,9 @@ import javafx.stage.Stage;
 import jfxtras.styles.jmetro.JMetro;
 import jfxtras.styles.jmetro.Style;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.Stack;
@@ -31,6 +38,8 @@ public class UI {
     private ContentPane contentPane;
     private PatternList patternList;
     private boolean askedToSave = false;
+    // The simulation can't be started while a file is being opened
+    private final BooleanProperty opening = new SimpleBooleanProperty(false);
 
     public UI(Stage primaryStage) {
         this.primaryStage = primaryStage;
@@ -115,9 +124,19 @@ public class UI {
             File selectedFile = fileChooser.showOpenDialog(primaryStage);
             if (selectedFile != null) {
                 App.world.setState(World.STOPPED);
-                if (!App.world.load(selectedFile.getPath())) {
+                String path = selectedFile.getPath();
+                Task<World.WorldFile> task = TaskService.task("Öffnen...", () -> World.read(path));
+                task.setOnSucceeded(e -> {
+                    opening.set(false);
+                    App.world.load(path, task.getValue());
+                });
+                task.setOnFailed(e -> {
+                    opening.set(false);
                     alert(Alert.AlertType.ERROR, "Fehler", "Die Datei konnte nicht geöffnet werden!", ButtonType.OK);
-                }
+                });
+                task.setOnCancelled(e -> opening.set(false));
+                opening.set(true);
+                App.tasks.submitIo(task);
             }
         }
     }
@@ -130,7 +149,8 @@ public class UI {
             Optional<ButtonType> button = App.ui.alert(Alert.AlertType.CONFIRMATION, "Ungesicherte Änderungen", "Möchtest du die Änderungen speichern?", ButtonType.YES, ButtonType.NO, ButtonType.CANCEL);
             if (button.isPresent() && button.get() != ButtonType.CANCEL) {
                 if (button.get() == ButtonType.YES) {
-                    App.ui.save();
+                    // Has to be finished before the world is replaced
+                    save(false);
                 } else {
                     askedToSave = true;
                 }
@@ -138,18 +158,34 @@ public class UI {
                 return false;
             }
         }
-        if (App.world.isSaved())
-            App.world.updatePosition();
+        if (App.world.isSaved() && App.world.getFilePath() != null) {
+            String path = App.world.getFilePath();
+            float cellSize = App.world.getCellSize();
+            float cameraX = App.world.getCameraX();
+            float cameraY = App.world.getCameraY();
+            App.tasks.runIo(() -> World.updatePosition(path, cellSize, cameraX, cameraY));
+        }
         return true;
     }
 
     public void save() {
-        if (!App.world.save(App.world.getFilePath())) {
-            saveAs();
-        }
+        save(true);
     }
 
     public void saveAs() {
+        saveAs(true);
+    }
+
+    private void save(boolean background) {
+        String path = App.world.getFilePath();
+        if (path == null) {
+            saveAs(background);
+        } else {
+            write(path, background, () -> saveAs(background));
+        }
+    }
+
+    private void saveAs(boolean background) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Speichern Als...");
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Game of Life Datei", "*.gol"));
@@ -158,12 +194,62 @@ public class UI {
             App.world.setState(World.STOPPED);
             String path = selectedFile.getPath();
             if (!path.endsWith(".gol")) path += ".gol";
-            if (!App.world.save(path)) {
-                alert(Alert.AlertType.ERROR, "Fehler", "Speichern fehlgeschlagen", ButtonType.OK);
-            }
+            write(path, background, () -> alert(Alert.AlertType.ERROR, "Fehler", "Speichern fehlgeschlagen", ButtonType.OK));
+        }
+    }
+
+    /**
+     * Writes the recorded pulses of the render pipeline into a CSV file.
+     */
+    public void exportRenderMetrics() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Render-Statistiken exportieren...");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Datei", "*.csv"));
+        File selectedFile = fileChooser.showSaveDialog(primaryStage);
+        if (selectedFile != null) {
+            String path = selectedFile.getPath().endsWith(".csv") ? selectedFile.getPath() : selectedFile.getPath() + ".csv";
+            String csv = contentPane.getRenderer().getMetrics().toCsv();
+            Task<Boolean> task = TaskService.task("Exportieren...", () -> {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+                    writer.write(csv);
+                }
+                return true;
+            });
+            task.setOnFailed(e -> alert(Alert.AlertType.ERROR, "Fehler", "Exportieren fehlgeschlagen", ButtonType.OK));
+            App.tasks.submitIo(task);
         }
     }
 
+    /**
+     * Saves the latest snapshot, in the background the editor stays usable while the file is written.
+     */
+    private void write(String path, boolean background, Runnable onFailure) {
+        if (!background) {
+            if (!App.world.save(path)) onFailure.run();
+            return;
+        }
+
+        long edits = App.world.getEdits();
+        Snapshot snapshot = App.world.acquireSnapshot();
+        World.WorldFile file = App.world.toWorldFile(snapshot);
+        Task<Boolean> task = TaskService.task("Speichern...", () -> {
+            try {
+                return World.write(path, file);
+            } finally {
+                snapshot.release();
+            }
+        });
+        task.setOnSucceeded(e -> {
+            if (task.getValue()) {
+                App.world.markSaved(path, edits);
+            } else {
+                onFailure.run();
+            }
+        });
+        task.setOnFailed(e -> onFailure.run());
+        App.tasks.submitIo(task);
+    }
+
     /* ******************* Cursor ********************* */
 
     public void setCursor(Cursor cursor) {
@@ -230,4 +316,12 @@ public class UI {
     public PrimaryController getPrimaryController() {
         return primaryController;
     }
+
+    public boolean isOpening() {
+        return opening.get();
+    }
+
+    public BooleanProperty openingProperty() {
+        return opening;
+    }
 }
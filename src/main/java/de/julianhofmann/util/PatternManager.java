@@ -148,6 +148,10 @@ public class PatternManager {
     }
 
     private static String getDataDir() {
+        // Lets the benchmarks work on a copy of the pattern library
+        String dataDir = System.getProperty("golminator.dataDir");
+        if (dataDir != null) return dataDir;
+
         String rootPath;
         String os = System.getProperty("os.name").toLowerCase();
         if (os.contains("windows")) {
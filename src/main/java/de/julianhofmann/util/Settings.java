@@ -1,5 +1,6 @@
 package de.julianhofmann.util;
 
+import de.julianhofmann.world.World;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -16,6 +17,13 @@ public class Settings {
     private final BooleanProperty darkTheme = new SimpleBooleanProperty(false);
     private final IntegerProperty maxUndoStages = new SimpleIntegerProperty(100);
     private final IntegerProperty windowWidth = new SimpleIntegerProperty(1200), windowHeight = new SimpleIntegerProperty(800);
+    private final IntegerProperty engine = new SimpleIntegerProperty(World.ENGINE_DEFAULT);
+    private final IntegerProperty hashLifeStep = new SimpleIntegerProperty(0);
+    private final IntegerProperty threads = new SimpleIntegerProperty(0);
+    private final BooleanProperty offHeap = new SimpleBooleanProperty(false);
+    private final BooleanProperty detectPeriods = new SimpleBooleanProperty(true);
+    private final BooleanProperty pauseOnPeriod = new SimpleBooleanProperty(false);
+    private final BooleanProperty showRenderMetrics = new SimpleBooleanProperty(false);
 
     public Settings() {
     }
@@ -36,6 +44,27 @@ public class Settings {
             try {
                 setMaxUndoStages((int) (long) object.get("max_undo_stages"));
             } catch (NullPointerException ignored) { }
+            try {
+                setEngine((int) (long) object.get("engine"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setHashLifeStep((int) (long) object.get("hashlife_step"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setThreads((int) (long) object.get("threads"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setOffHeap((boolean) object.get("off_heap"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setDetectPeriods((boolean) object.get("detect_periods"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setPauseOnPeriod((boolean) object.get("pause_on_period"));
+            } catch (NullPointerException ignored) { }
+            try {
+                setShowRenderMetrics((boolean) object.get("show_render_metrics"));
+            } catch (NullPointerException ignored) { }
         } catch (ParseException | IOException ignored) {
             File file = new File(FILE_PATH);
             //noinspection ResultOfMethodCallIgnored
@@ -56,6 +85,13 @@ public class Settings {
         object.put("window_width", getWindowWidth());
         object.put("window_height", getWindowHeight());
         object.put("max_undo_stages", getMaxUndoStages());
+        object.put("engine", getEngine());
+        object.put("hashlife_step", getHashLifeStep());
+        object.put("threads", getThreads());
+        object.put("off_heap", isOffHeap());
+        object.put("detect_periods", isDetectPeriods());
+        object.put("pause_on_period", isPauseOnPeriod());
+        object.put("show_render_metrics", isShowRenderMetrics());
         try {
             BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH));
             writer.write(object.toJSONString());
@@ -102,6 +138,42 @@ public class Settings {
         this.darkTheme.set(darkTheme);
     }
 
+    public int getEngine() {
+        return engine.get();
+    }
+
+    public IntegerProperty engineProperty() {
+        return engine;
+    }
+
+    public void setEngine(int engine) {
+        this.engine.set(engine);
+    }
+
+    public int getHashLifeStep() {
+        return hashLifeStep.get();
+    }
+
+    public IntegerProperty hashLifeStepProperty() {
+        return hashLifeStep;
+    }
+
+    public void setHashLifeStep(int hashLifeStep) {
+        this.hashLifeStep.set(hashLifeStep);
+    }
+
+    public int getThreads() {
+        return threads.get();
+    }
+
+    public IntegerProperty threadsProperty() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads.set(threads);
+    }
+
     private String getConfigDir() {
         String rootPath;
         String os = System.getProperty("os.name").toLowerCase();
@@ -121,4 +193,52 @@ public class Settings {
 
         return path;
     }
+
+    public boolean isOffHeap() {
+        return offHeap.get();
+    }
+
+    public BooleanProperty offHeapProperty() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap.set(offHeap);
+    }
+
+    public boolean isDetectPeriods() {
+        return detectPeriods.get();
+    }
+
+    public BooleanProperty detectPeriodsProperty() {
+        return detectPeriods;
+    }
+
+    public void setDetectPeriods(boolean detectPeriods) {
+        this.detectPeriods.set(detectPeriods);
+    }
+
+    public boolean isPauseOnPeriod() {
+        return pauseOnPeriod.get();
+    }
+
+    public BooleanProperty pauseOnPeriodProperty() {
+        return pauseOnPeriod;
+    }
+
+    public void setPauseOnPeriod(boolean pauseOnPeriod) {
+        this.pauseOnPeriod.set(pauseOnPeriod);
+    }
+
+    public boolean isShowRenderMetrics() {
+        return showRenderMetrics.get();
+    }
+
+    public BooleanProperty showRenderMetricsProperty() {
+        return showRenderMetrics;
+    }
+
+    public void setShowRenderMetrics(boolean showRenderMetrics) {
+        this.showRenderMetrics.set(showRenderMetrics);
+    }
 }
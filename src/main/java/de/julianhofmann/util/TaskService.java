@@ -0,0 +1,115 @@
+package de.julianhofmann.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs work off the FX thread. Blocking I/O runs on virtual threads if the JVM has them (JDK 21+),
+ * otherwise on a cached pool of daemon threads. CPU work runs on a pool with one thread per processor.
+ * <p>
+ * {@link Task}s that are submitted from the FX thread are listed in {@link #getTasks()} until they are
+ * done, so their progress can be shown and they can be cancelled.
+ */
+public class TaskService {
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final ExecutorService ioExecutor = createIoExecutor();
+    private final ExecutorService cpuExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("CPU"));
+    private final ObservableList<Task<?>> tasks = FXCollections.observableArrayList();
+
+    private static ExecutorService createIoExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("IO"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Has to be called on the FX thread.
+     */
+    public <T> Task<T> submitIo(Task<T> task) {
+        track(task);
+        ioExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * Has to be called on the FX thread.
+     */
+    public <T> Task<T> submitCpu(Task<T> task) {
+        track(task);
+        cpuExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * A task with a title for the status bar that just calls {@code callable}.
+     */
+    public static <T> Task<T> task(String title, Callable<T> callable) {
+        return new Task<>() {
+            {
+                updateTitle(title);
+            }
+
+            @Override
+            protected T call() throws Exception {
+                return callable.call();
+            }
+        };
+    }
+
+    public Future<?> runIo(Runnable runnable) {
+        return ioExecutor.submit(runnable);
+    }
+
+    public Future<?> runCpu(Runnable runnable) {
+        return cpuExecutor.submit(runnable);
+    }
+
+    private void track(Task<?> task) {
+        tasks.add(task);
+        task.stateProperty().addListener((p, o, n) -> {
+            if (n == Worker.State.SUCCEEDED || n == Worker.State.CANCELLED || n == Worker.State.FAILED) {
+                tasks.remove(task);
+                if (n == Worker.State.FAILED && task.getException() != null) {
+                    task.getException().printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * The running and waiting tasks, oldest first. Only changes on the FX thread.
+     */
+    public ObservableList<Task<?>> getTasks() {
+        return FXCollections.unmodifiableObservableList(tasks);
+    }
+
+    /**
+     * Cancels the CPU work and waits a few seconds for pending I/O like saving to finish.
+     */
+    public void shutdown() {
+        cpuExecutor.shutdownNow();
+        ioExecutor.shutdown();
+        try {
+            ioExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.julianhofmann.world;
+
+/**
+ * A hash of a set of cells that can be updated cell by cell and that can be moved: the hash is the sum of
+ * A^x * B^y * S[state] over all cells modulo the prime 2^61 - 1, so moving all cells by (dx, dy) multiplies
+ * it by A^dx * B^dy. Together with the sums of the coordinates this is enough to tell whether one generation
+ * is another one moved by some offset.
+ */
+public class CellHash {
+    static final long P = (1L << 61) - 1;
+    static final long A = 0x1B873593CC9E2D51L & P;
+    static final long B = 0x0E6546B64F1C4D3BL & P;
+    private static final long INVERSE_A = power(A, P - 2);
+    private static final long INVERSE_B = power(B, P - 2);
+    private static final int TABLE_RANGE = 1024;
+    private static final long[] POWERS_A = powers(A);
+    private static final long[] POWERS_B = powers(B);
+    private static final long[] STATES = new long[256];
+    private static final long[][] ROW_BYTES = rowBytes();
+    private static final long[] BIT_INDEX_MASKS = {
+            0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+    };
+
+    static {
+        // Living cells count 1, so the bitboards can leave the factor out
+        long state = 0x2545F4914F6CDD1DL;
+        STATES[1] = 1;
+        for (int i = 2; i < STATES.length; i++) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            STATES[i] = (state & P) % (P - 2) + 2;
+        }
+    }
+
+    private long hash;
+    private long population;
+    private long sumX, sumY;
+
+    public void clear() {
+        hash = 0;
+        population = 0;
+        sumX = 0;
+        sumY = 0;
+    }
+
+    public void set(CellHash other) {
+        hash = other.hash;
+        population = other.population;
+        sumX = other.sumX;
+        sumY = other.sumY;
+    }
+
+    public void add(int x, int y, byte state) {
+        hash = add(hash, term(x, y, state));
+        population++;
+        sumX += x;
+        sumY += y;
+    }
+
+    public void remove(int x, int y, byte state) {
+        hash = subtract(hash, term(x, y, state));
+        population--;
+        sumX -= x;
+        sumY -= y;
+    }
+
+    /**
+     * Adds the changes of a step that were collected separately, for example per tile.
+     */
+    void add(long hash, long population, long sumX, long sumY) {
+        this.hash = add(this.hash, hash);
+        this.population += population;
+        this.sumX += sumX;
+        this.sumY += sumY;
+    }
+
+    public void compute(CellSet cells) {
+        clear();
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) != 0) {
+                long key = cells.keyAt(slot);
+                add(CellSet.x(key), CellSet.y(key), cells.stateAt(slot));
+            }
+        }
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getPopulation() {
+        return population;
+    }
+
+    public long getSumX() {
+        return sumX;
+    }
+
+    public long getSumY() {
+        return sumY;
+    }
+
+    /* ********************** Arithmetic ************************* */
+
+    static long term(int x, int y, byte state) {
+        return multiply(multiply(powerA(x), powerB(y)), STATES[state & 0xFF]);
+    }
+
+    /**
+     * The sum of A^x over the set bits x of a row of a tile, looked up byte by byte.
+     */
+    static long row(long bits) {
+        long hash = 0;
+        for (int i = 0; bits != 0; i++, bits >>>= 8) {
+            int b = (int) bits & 0xFF;
+            if (b != 0) hash = add(hash, ROW_BYTES[i][b]);
+        }
+        return hash;
+    }
+
+    /**
+     * The sum of the indices of the set bits.
+     */
+    static int sumOfBitIndices(long bits) {
+        int sum = 0;
+        for (int i = 0; i < BIT_INDEX_MASKS.length; i++) {
+            sum += Long.bitCount(bits & BIT_INDEX_MASKS[i]) << i;
+        }
+        return sum;
+    }
+
+    /**
+     * The hash of the same cells moved by (dx, dy).
+     */
+    static long move(long hash, long dx, long dy) {
+        return multiply(hash, multiply(powerA(dx), powerB(dy)));
+    }
+
+    static long powerA(long exponent) {
+        if (exponent >= -TABLE_RANGE && exponent < TABLE_RANGE) return POWERS_A[(int) exponent + TABLE_RANGE];
+        return exponent < 0 ? power(INVERSE_A, -exponent) : power(A, exponent);
+    }
+
+    static long powerB(long exponent) {
+        if (exponent >= -TABLE_RANGE && exponent < TABLE_RANGE) return POWERS_B[(int) exponent + TABLE_RANGE];
+        return exponent < 0 ? power(INVERSE_B, -exponent) : power(B, exponent);
+    }
+
+    static long add(long a, long b) {
+        long sum = a + b;
+        return sum >= P ? sum - P : sum;
+    }
+
+    static long subtract(long a, long b) {
+        long difference = a - b;
+        return difference < 0 ? difference + P : difference;
+    }
+
+    static long multiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        long result = (low & P) + ((low >>> 61) | (high << 3));
+        return result >= P ? result - P : result;
+    }
+
+    /**
+     * Only for positive exponents, the inverse of a number is number^(P - 2) because P is prime.
+     */
+    private static long power(long base, long exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) result = multiply(result, base);
+            base = multiply(base, base);
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    private static long[][] rowBytes() {
+        long[][] rowBytes = new long[8][256];
+        for (int i = 0; i < 8; i++) {
+            for (int b = 1; b < 256; b++) {
+                int bit = Integer.numberOfTrailingZeros(b);
+                rowBytes[i][b] = add(rowBytes[i][b & (b - 1)], powerA(i * 8 + bit));
+            }
+        }
+        return rowBytes;
+    }
+
+    private static long[] powers(long base) {
+        long[] powers = new long[TABLE_RANGE * 2];
+        powers[TABLE_RANGE] = 1;
+        long inverse = power(base, P - 2);
+        for (int i = 1; i <= TABLE_RANGE; i++) {
+            if (TABLE_RANGE + i < powers.length) powers[TABLE_RANGE + i] = multiply(powers[TABLE_RANGE + i - 1], base);
+            powers[TABLE_RANGE - i] = multiply(powers[TABLE_RANGE - i + 1], inverse);
+        }
+        return powers;
+    }
+}
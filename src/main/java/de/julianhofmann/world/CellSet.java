@@ -0,0 +1,275 @@
+package de.julianhofmann.world;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Open addressing hash set of cells with linear probing. The x and y coordinates of a cell are
+ * packed into one long key and only cells with a state other than 0 are stored, so lookups and
+ * updates never allocate. A slot with state 0 is empty.
+ * <p>
+ * {@link #share()} returns a copy in constant time that uses the same arrays. The arrays are only copied
+ * when one of the sets is modified while the other one still uses them.
+ */
+public class CellSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private byte[] states;
+    private int size;
+    private int mask;
+    // The number of sets using the arrays or null if this set is the only one
+    private AtomicInteger owners;
+
+    public CellSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public CellSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /* ********************** Keys ************************* */
+
+    public static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int x(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int y(long key) {
+        return (int) key;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /* ********************** Access ************************* */
+
+    public byte get(long key) {
+        int slot = slot(key);
+        while (states[slot] != 0) {
+            if (keys[slot] == key) return states[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public byte get(int x, int y) {
+        return get(key(x, y));
+    }
+
+    public boolean contains(long key) {
+        return get(key) != 0;
+    }
+
+    /**
+     * Sets the state of a cell, a state of 0 removes it.
+     */
+    public void set(long key, byte state) {
+        if (state == 0) {
+            remove(key);
+            return;
+        }
+        own();
+        int slot = slot(key);
+        while (states[slot] != 0) {
+            if (keys[slot] == key) {
+                states[slot] = state;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        states[slot] = state;
+        size++;
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    public void set(int x, int y, byte state) {
+        set(key(x, y), state);
+    }
+
+    /**
+     * Adds a cell if it is not in the set yet and returns whether it was added.
+     */
+    public boolean add(long key, byte state) {
+        own();
+        int slot = slot(key);
+        while (states[slot] != 0) {
+            if (keys[slot] == key) return false;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        states[slot] = state;
+        size++;
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    public void remove(long key) {
+        int slot = slot(key);
+        while (states[slot] != 0) {
+            if (keys[slot] == key) {
+                own();
+                states[slot] = 0;
+                size--;
+                shiftBack(slot);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Moves the following entries of the probe sequence into the gap left by a removed entry,
+     * so lookups never have to skip deleted slots.
+     */
+    private void shiftBack(int gap) {
+        int slot = (gap + 1) & mask;
+        while (states[slot] != 0) {
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                states[gap] = states[slot];
+                states[slot] = 0;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        if (size > 0) {
+            if (release()) {
+                allocate(keys.length);
+            } else {
+                Arrays.fill(states, (byte) 0);
+            }
+            size = 0;
+        }
+    }
+
+    public void addAll(CellSet cells) {
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.states[slot] != 0) {
+                set(cells.keys[slot], cells.states[slot]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content with the one of {@code cells}, reusing the arrays if the capacity matches.
+     */
+    public void copyFrom(CellSet cells) {
+        if (release() || keys.length != cells.keys.length) {
+            allocate(cells.keys.length);
+        }
+        System.arraycopy(cells.keys, 0, keys, 0, keys.length);
+        System.arraycopy(cells.states, 0, states, 0, states.length);
+        size = cells.size;
+    }
+
+    public CellSet copy() {
+        CellSet copy = new CellSet(MIN_CAPACITY);
+        copy.keys = keys.clone();
+        copy.states = states.clone();
+        copy.size = size;
+        copy.mask = mask;
+        return copy;
+    }
+
+    /**
+     * A copy that uses the same arrays until one of both is modified, so sharing takes constant time.
+     */
+    public CellSet share() {
+        if (owners == null) owners = new AtomicInteger(1);
+        owners.incrementAndGet();
+        CellSet copy = new CellSet(MIN_CAPACITY);
+        copy.keys = keys;
+        copy.states = states;
+        copy.size = size;
+        copy.mask = mask;
+        copy.owners = owners;
+        return copy;
+    }
+
+    /* ********************** Iteration ************************* */
+
+    /**
+     * The number of slots, iterate over {@code 0..capacity()} with {@link #stateAt(int)} and {@link #keyAt(int)}.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public byte stateAt(int slot) {
+        return states[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ********************** Memory ************************* */
+
+    /**
+     * Copies the arrays before they are modified if another set still uses them.
+     */
+    private void own() {
+        // The arrays are only given up after they have been copied, so the last owner can't modify them too early
+        if (owners != null && owners.get() > 1) {
+            keys = keys.clone();
+            states = states.clone();
+        }
+        release();
+    }
+
+    /**
+     * Stops sharing the arrays without copying them, they must be replaced if another set still uses them.
+     *
+     * @return whether another set still uses the arrays
+     */
+    private boolean release() {
+        if (owners == null) return false;
+        boolean shared = owners.getAndDecrement() > 1;
+        owners = null;
+        return shared;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        states = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        byte[] oldStates = states;
+        allocate(capacity);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldStates[slot] != 0) {
+                set(oldKeys[slot], oldStates[slot]);
+            }
+        }
+    }
+}
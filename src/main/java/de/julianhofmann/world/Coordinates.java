@@ -1,7 +1,5 @@
 package de.julianhofmann.world;
 
-import java.util.Objects;
-
 public class Coordinates {
     private float x, y;
 
@@ -60,7 +58,7 @@ public class Coordinates {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return 31 * Float.hashCode(x) + Float.hashCode(y);
     }
 
     public Coordinates copy() {
@@ -0,0 +1,136 @@
+package de.julianhofmann.world;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The number of living cells in square blocks of 2^level x 2^level cells, for every level from 1 to
+ * {@link #LEVELS}, like the mip levels of a texture, so zoomed out views can be drawn from a few blocks
+ * per pixel instead of from every cell. Can be read by several threads at once.
+ */
+public class DensityPyramid {
+    /**
+     * Enough levels for a block to fit into a pixel at {@link World#MIN_CELL_SIZE}.
+     */
+    public static final int LEVELS = 31 - Integer.numberOfLeadingZeros(Math.round(1 / World.MIN_CELL_SIZE));
+
+    private final CellSet cells;
+    private final AtomicReferenceArray<Level> levels = new AtomicReferenceArray<>(LEVELS + 1);
+
+    /**
+     * The levels are computed from the cells when they are used first, so the cells must not change until then.
+     */
+    DensityPyramid(CellSet cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * Usually only one or two levels are needed for a generation, so each level is counted directly from the cells.
+     */
+    private Level level(int level) {
+        Level built = levels.get(level);
+        if (built != null) return built;
+        synchronized (this) {
+            if (levels.get(level) != null) return levels.get(level);
+            Level blocks = new Level(cells.size() >> 2);
+            for (int slot = 0; slot < cells.capacity(); slot++) {
+                if (cells.stateAt(slot) == 1) {
+                    long key = cells.keyAt(slot);
+                    blocks.add(CellSet.key(CellSet.x(key) >> level, CellSet.y(key) >> level), 1);
+                }
+            }
+            levels.set(level, blocks);
+            return blocks;
+        }
+    }
+
+    /**
+     * The number of living cells in the block (x, y) of the level, which covers the cells
+     * x * 2^level to (x + 1) * 2^level - 1.
+     */
+    public int get(int level, int x, int y) {
+        return level(level).get(CellSet.key(x, y));
+    }
+
+    /**
+     * The number of blocks of the level that contain living cells.
+     */
+    public int size(int level) {
+        return level(level).size;
+    }
+
+    /**
+     * Calls the consumer with every block of the level that contains living cells.
+     */
+    public void forEach(int level, BlockConsumer consumer) {
+        Level blocks = level(level);
+        for (int slot = 0; slot < blocks.keys.length; slot++) {
+            if (blocks.counts[slot] != 0) {
+                consumer.accept(CellSet.x(blocks.keys[slot]), CellSet.y(blocks.keys[slot]), blocks.counts[slot]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface BlockConsumer {
+        void accept(int x, int y, int count);
+    }
+
+    /**
+     * Open addressing hash map from block keys to counts, a count of 0 marks an empty slot.
+     */
+    private static final class Level {
+        private long[] keys;
+        private int[] counts;
+        private int size;
+        private int mask;
+
+        private Level(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) capacity <<= 1;
+            allocate(capacity);
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private int get(long key) {
+            int slot = slot(key);
+            while (counts[slot] != 0) {
+                if (keys[slot] == key) return counts[slot];
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        private void add(long key, int count) {
+            int slot = slot(key);
+            while (counts[slot] != 0) {
+                if (keys[slot] == key) {
+                    counts[slot] += count;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            counts[slot] = count;
+            size++;
+            if (size * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldCounts = counts;
+                allocate(keys.length * 2);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldCounts[i] != 0) add(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            counts = new int[capacity];
+            mask = capacity - 1;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.julianhofmann.world;
+
+/**
+ * A simulation algorithm that keeps its own representation of the world while the simulation is running.
+ */
+public interface Engine {
+    void setCells(CellSet cells);
+
+    /**
+     * Replaces the content of {@code cells} with the living cells of the current generation.
+     */
+    void getCells(CellSet cells);
+
+    /**
+     * Only called with rules the engine supports, see {@link World}.
+     */
+    void setRule(Rule rule);
+
+    void step();
+
+    long getGeneration();
+
+    long getPopulation();
+
+    /**
+     * The number of cells that came alive in the last step or -1 if the engine doesn't count them.
+     */
+    default long getBirths() {
+        return -1;
+    }
+
+    /**
+     * The number of cells that died in the last step or -1 if the engine doesn't count them.
+     */
+    default long getDeaths() {
+        return -1;
+    }
+
+    /**
+     * Starts or stops keeping a {@link CellHash} of the current generation for the {@link PeriodDetector}.
+     *
+     * @return false if the engine can't keep one
+     */
+    default boolean setHashing(boolean hashing) {
+        return false;
+    }
+
+    /**
+     * The hash of the current generation or null if the engine doesn't keep one.
+     */
+    default CellHash getHash() {
+        return null;
+    }
+
+    /**
+     * The number of cells whose next state was computed in the last step or -1 if the engine doesn't count them.
+     */
+    default long getEvaluatedCells() {
+        return -1;
+    }
+
+    /**
+     * Releases resources like threads that are held by the engine.
+     */
+    default void dispose() { }
+}
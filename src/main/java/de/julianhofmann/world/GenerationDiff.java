@@ -0,0 +1,72 @@
+package de.julianhofmann.world;
+
+import java.util.Arrays;
+
+/**
+ * The cells that were born or died between two snapshots, as keys of {@link CellSet}. Only living
+ * cells count, so a cell that starts dying in a Generations rule is a death.
+ */
+public final class GenerationDiff {
+    private final long baseSequence;
+    private final long[] births;
+    private final long[] deaths;
+
+    private GenerationDiff(long baseSequence, long[] births, long[] deaths) {
+        this.baseSequence = baseSequence;
+        this.births = births;
+        this.deaths = deaths;
+    }
+
+    /**
+     * The sequence number of the snapshot the changes apply to, see {@link Snapshot#getSequence()}.
+     */
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * Must not be modified.
+     */
+    public long[] getBirths() {
+        return births;
+    }
+
+    /**
+     * Must not be modified.
+     */
+    public long[] getDeaths() {
+        return deaths;
+    }
+
+    public int size() {
+        return births.length + deaths.length;
+    }
+
+    /**
+     * Collects the changes of a generation, can be reused for the next one after {@link #clear()}.
+     */
+    static final class Builder {
+        private long[] births = new long[64];
+        private long[] deaths = new long[64];
+        private int birthCount, deathCount;
+
+        void addBirth(long key) {
+            if (birthCount == births.length) births = Arrays.copyOf(births, births.length * 2);
+            births[birthCount++] = key;
+        }
+
+        void addDeath(long key) {
+            if (deathCount == deaths.length) deaths = Arrays.copyOf(deaths, deaths.length * 2);
+            deaths[deathCount++] = key;
+        }
+
+        void clear() {
+            birthCount = 0;
+            deathCount = 0;
+        }
+
+        GenerationDiff build(long baseSequence) {
+            return new GenerationDiff(baseSequence, Arrays.copyOf(births, birthCount), Arrays.copyOf(deaths, deathCount));
+        }
+    }
+}
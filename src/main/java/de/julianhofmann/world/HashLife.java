@@ -0,0 +1,363 @@
+package de.julianhofmann.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Gosper's HashLife: the world is stored as a canonicalized quadtree and the
+ * result of advancing every node is memoized, so repetitive patterns can be
+ * advanced by 2^n generations per step.
+ */
+public class HashLife implements Engine {
+    private static final int MAX_NODES = 2_000_000;
+    private static final int MIN_LEVEL = 3;
+
+    private final HashMap<Node, Node> nodes = new HashMap<>();
+    private final ArrayList<Node> emptyNodes = new ArrayList<>();
+    private final Node dead = new Node(0);
+    private final Node alive = new Node(1);
+
+    private Node root;
+    private long originX, originY;
+    private long generation;
+    private int stepExponent;
+    private Rule rule = Rule.CONWAY;
+
+    public HashLife() {
+        clear();
+    }
+
+    /* ********************** Conversion ************************* */
+
+    public void clear() {
+        nodes.clear();
+        emptyNodes.clear();
+        emptyNodes.add(dead);
+        root = empty(MIN_LEVEL);
+        originX = -(1L << (MIN_LEVEL - 1));
+        originY = -(1L << (MIN_LEVEL - 1));
+        generation = 0;
+    }
+
+    @Override
+    public void setCells(CellSet cells) {
+        clear();
+
+        long[] xs = new long[cells.size()];
+        long[] ys = new long[cells.size()];
+        int count = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) {
+                xs[count] = CellSet.x(cells.keyAt(slot));
+                ys[count] = CellSet.y(cells.keyAt(slot));
+                count++;
+            }
+        }
+        if (count == 0) return;
+
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        int level = MIN_LEVEL;
+        while ((1L << level) <= Math.max(maxX - minX, maxY - minY)) level++;
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+
+        root = build(level, minX, minY, xs, ys, order, 0, count);
+        originX = minX;
+        originY = minY;
+    }
+
+    @Override
+    public void getCells(CellSet cells) {
+        cells.clear();
+        collect(root, originX, originY, cells);
+    }
+
+    private Node build(int level, long x, long y, long[] xs, long[] ys, int[] order, int from, int to) {
+        if (from == to) return empty(level);
+        if (level == 0) return alive;
+
+        long half = 1L << (level - 1);
+        int splitX = partition(xs, order, from, to, x + half);
+        int splitWestY = partition(ys, order, from, splitX, y + half);
+        int splitEastY = partition(ys, order, splitX, to, y + half);
+
+        return join(
+                build(level - 1, x, y, xs, ys, order, from, splitWestY),
+                build(level - 1, x + half, y, xs, ys, order, splitX, splitEastY),
+                build(level - 1, x, y + half, xs, ys, order, splitWestY, splitX),
+                build(level - 1, x + half, y + half, xs, ys, order, splitEastY, to));
+    }
+
+    /**
+     * Reorders {@code order[from..to)} so that all indices whose value is below
+     * {@code pivot} come first and returns the index of the first other one.
+     */
+    private static int partition(long[] values, int[] order, int from, int to, long pivot) {
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+            if (values[order[i]] < pivot) {
+                i++;
+            } else {
+                int temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    private void collect(Node node, long x, long y, CellSet cells) {
+        if (node.population == 0) return;
+        if (node.level == 0) {
+            cells.set(CellSet.key((int) x, (int) y), (byte) 1);
+            return;
+        }
+        long half = 1L << (node.level - 1);
+        collect(node.nw, x, y, cells);
+        collect(node.ne, x + half, y, cells);
+        collect(node.sw, x, y + half, cells);
+        collect(node.se, x + half, y + half, cells);
+    }
+
+    /* ********************** Simulation ************************* */
+
+    /**
+     * Advances the world by 2^stepExponent generations.
+     */
+    @Override
+    public void step() {
+        if (nodes.size() > MAX_NODES) {
+            collectGarbage();
+        }
+
+        while (root.level < stepExponent + 2 || !isPadded(root)) {
+            expand();
+        }
+        expand();
+
+        long offset = 1L << (root.level - 2);
+        root = successor(root, stepExponent);
+        originX += offset;
+        originY += offset;
+        generation += 1L << stepExponent;
+    }
+
+    private void expand() {
+        Node empty = empty(root.level - 1);
+        root = join(
+                join(empty, empty, empty, root.nw),
+                join(empty, empty, root.ne, empty),
+                join(empty, root.sw, empty, empty),
+                join(root.se, empty, empty, empty));
+        long offset = 1L << (root.level - 2);
+        originX -= offset;
+        originY -= offset;
+    }
+
+    private static boolean isPadded(Node node) {
+        return node.nw.population == node.nw.se.se.population
+                && node.ne.population == node.ne.sw.sw.population
+                && node.sw.population == node.sw.ne.ne.population
+                && node.se.population == node.se.nw.nw.population;
+    }
+
+    /**
+     * Returns the center of {@code node} advanced by 2^min(stepExponent, level - 2) generations.
+     */
+    private Node successor(Node node, int stepExponent) {
+        int step = Math.min(stepExponent, node.level - 2);
+        if (node.result != null && node.resultStep == step) return node.result;
+
+        Node result;
+        if (node.population == 0) {
+            result = node.nw;
+        } else if (node.level == 2) {
+            result = successorLevel2(node);
+        } else {
+            Node n00 = successor(node.nw, step);
+            Node n01 = successor(join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw), step);
+            Node n02 = successor(node.ne, step);
+            Node n10 = successor(join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne), step);
+            Node n11 = successor(join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw), step);
+            Node n12 = successor(join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne), step);
+            Node n20 = successor(node.sw, step);
+            Node n21 = successor(join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw), step);
+            Node n22 = successor(node.se, step);
+
+            if (step < node.level - 2) {
+                result = join(
+                        join(n00.se, n01.sw, n10.ne, n11.nw),
+                        join(n01.se, n02.sw, n11.ne, n12.nw),
+                        join(n10.se, n11.sw, n20.ne, n21.nw),
+                        join(n11.se, n12.sw, n21.ne, n22.nw));
+            } else {
+                result = join(
+                        successor(join(n00, n01, n10, n11), step),
+                        successor(join(n01, n02, n11, n12), step),
+                        successor(join(n10, n11, n20, n21), step),
+                        successor(join(n11, n12, n21, n22), step));
+            }
+        }
+
+        node.result = result;
+        node.resultStep = step;
+        return result;
+    }
+
+    private Node successorLevel2(Node node) {
+        int bits = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                bits |= getLeaf(node, x, y) << (y * 4 + x);
+            }
+        }
+        return join(nextCell(bits, 1, 1), nextCell(bits, 2, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 2));
+    }
+
+    private Node nextCell(int bits, int x, int y) {
+        int neighborhood = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                neighborhood = (neighborhood << 1) | ((bits >> ((y + dy) * 4 + x + dx)) & 1);
+            }
+        }
+        int state = (bits >> (y * 4 + x)) & 1;
+        return rule.next(state, neighborhood) == 1 ? alive : dead;
+    }
+
+    private static int getLeaf(Node node, int x, int y) {
+        while (node.level > 0) {
+            int half = 1 << (node.level - 1);
+            if (y < half) {
+                node = x < half ? node.nw : node.ne;
+            } else {
+                node = x < half ? node.sw : node.se;
+                y -= half;
+            }
+            if (x >= half) x -= half;
+        }
+        return (int) node.population;
+    }
+
+    /* ********************** Nodes ************************* */
+
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        Node node = new Node(nw, ne, sw, se);
+        Node existing = nodes.putIfAbsent(node, node);
+        return existing != null ? existing : node;
+    }
+
+    private Node empty(int level) {
+        while (emptyNodes.size() <= level) {
+            Node previous = emptyNodes.get(emptyNodes.size() - 1);
+            emptyNodes.add(join(previous, previous, previous, previous));
+        }
+        return emptyNodes.get(level);
+    }
+
+    /**
+     * Drops all memoized results by rebuilding the current tree in a fresh node table.
+     */
+    private void collectGarbage() {
+        nodes.clear();
+        emptyNodes.clear();
+        emptyNodes.add(dead);
+        root = copy(root, new IdentityHashMap<>());
+    }
+
+    private Node copy(Node node, IdentityHashMap<Node, Node> copies) {
+        if (node.level == 0) return node;
+        Node copy = copies.get(node);
+        if (copy == null) {
+            copy = join(copy(node.nw, copies), copy(node.ne, copies), copy(node.sw, copies), copy(node.se, copies));
+            copies.put(node, copy);
+        }
+        return copy;
+    }
+
+    /* ********************** Getters ************************* */
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public long getPopulation() {
+        return root.population;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Only supports rules with two states. Changing the rule drops all memoized results.
+     */
+    @Override
+    public void setRule(Rule rule) {
+        if (!rule.equals(this.rule)) {
+            this.rule = rule;
+            collectGarbage();
+        }
+    }
+
+    public int getStepExponent() {
+        return stepExponent;
+    }
+
+    public void setStepExponent(int stepExponent) {
+        this.stepExponent = stepExponent;
+    }
+
+    private static final class Node {
+        private final Node nw, ne, sw, se;
+        private final int level;
+        private final long population;
+        private final int hash;
+        private Node result;
+        private int resultStep = -1;
+
+        private Node(int population) {
+            nw = ne = sw = se = null;
+            level = 0;
+            this.population = population;
+            hash = population;
+        }
+
+        private Node(Node nw, Node ne, Node sw, Node se) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            level = nw.level + 1;
+            population = nw.population + ne.population + sw.population + se.population;
+            hash = ((System.identityHashCode(nw) * 31 + System.identityHashCode(ne)) * 31
+                    + System.identityHashCode(sw)) * 31 + System.identityHashCode(se);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+            Node that = (Node) o;
+            return level != 0 && nw == that.nw && ne == that.ne && sw == that.sw && se == that.se;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
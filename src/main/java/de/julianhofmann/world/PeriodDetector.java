@@ -0,0 +1,179 @@
+package de.julianhofmann.world;
+
+/**
+ * Notices when a generation repeats an earlier one, possibly moved by some offset. From then on the
+ * world repeats itself forever.
+ * <p>
+ * Keeping a {@link CellHash} costs about as much as computing the generation, so it is only kept while it
+ * could pay off: the population, births and deaths of the last generations are remembered for free, and
+ * only if they have been repeating with some period for a while, {@link #observe} asks for the hash.
+ * The hashes then tell whether the cells themselves repeat. Periods up to {@link #MAX_PERIOD} are found.
+ */
+public class PeriodDetector {
+    public static final int MAX_PERIOD = 64;
+    private static final int HISTORY = 2 * MAX_PERIOD;
+    private static final int MIN_REPEATS = 16;
+
+    // The population, births and deaths of the last generations
+    private final long[] generations = new long[HISTORY];
+    private final long[] populations = new long[HISTORY];
+    private final long[] births = new long[HISTORY];
+    private final long[] deaths = new long[HISTORY];
+    private int index;
+    private int count;
+
+    // The hashes of the last generations since the hash is kept
+    private final long[] hashGenerations = new long[HISTORY];
+    private final long[] hashes = new long[HISTORY];
+    private final long[] hashPopulations = new long[HISTORY];
+    private final long[] sumsX = new long[HISTORY];
+    private final long[] sumsY = new long[HISTORY];
+    private int hashIndex;
+    private int hashCount;
+
+    private Period period;
+
+    public synchronized void reset() {
+        count = 0;
+        hashCount = 0;
+        period = null;
+    }
+
+    /**
+     * Adds a generation. Generations that were skipped, e.g. by HashLife, start a new history.
+     *
+     * @return whether the hash of this generation should be passed to {@link #check}
+     */
+    public synchronized boolean observe(long generation, long population, long births, long deaths) {
+        if (period != null) return false;
+
+        if (count > 0 && generations[(index + HISTORY - 1) % HISTORY] != generation - 1) count = 0;
+        generations[index] = generation;
+        populations[index] = population;
+        this.births[index] = births;
+        this.deaths[index] = deaths;
+        index = (index + 1) % HISTORY;
+        if (count < HISTORY) count++;
+
+        for (int period = 1; period <= MAX_PERIOD; period++) {
+            if (isRepeating(period)) return true;
+        }
+        hashCount = 0;
+        return false;
+    }
+
+    /**
+     * Whether the last generations repeat the ones {@code period} generations before them.
+     */
+    private boolean isRepeating(int period) {
+        int length = Math.max(period, MIN_REPEATS);
+        if (length + period > count) return false;
+        for (int i = 1; i <= length; i++) {
+            int slot = (index + HISTORY - i) % HISTORY;
+            int earlier = (slot + HISTORY - period) % HISTORY;
+            if (populations[slot] != populations[earlier] || births[slot] != births[earlier] || deaths[slot] != deaths[earlier]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the hash of a generation with the hashes of the previous generations.
+     *
+     * @return the period if {@code generation} repeats an earlier generation, null otherwise or if it has already been found
+     */
+    public synchronized Period check(long generation, CellHash hash) {
+        if (period != null) return null;
+
+        if (hashCount > 0 && hashGenerations[(hashIndex + HISTORY - 1) % HISTORY] != generation - 1) hashCount = 0;
+
+        // Newest first, so the shortest period is found
+        for (int i = 1; i <= hashCount; i++) {
+            int slot = (hashIndex + HISTORY - i) % HISTORY;
+            Period period = compare(slot, generation, hash);
+            if (period != null) {
+                this.period = period;
+                return period;
+            }
+        }
+
+        hashGenerations[hashIndex] = generation;
+        hashes[hashIndex] = hash.getHash();
+        hashPopulations[hashIndex] = hash.getPopulation();
+        sumsX[hashIndex] = hash.getSumX();
+        sumsY[hashIndex] = hash.getSumY();
+        hashIndex = (hashIndex + 1) % HISTORY;
+        if (hashCount < HISTORY) hashCount++;
+        return null;
+    }
+
+    private Period compare(int slot, long generation, CellHash hash) {
+        long population = hash.getPopulation();
+        if (hashPopulations[slot] != population) return null;
+        if (population == 0) return new Period(generation - hashGenerations[slot], generation, 0, 0, 0);
+
+        // All cells move by the same offset, so the sums of the coordinates do too
+        long sumX = hash.getSumX() - sumsX[slot];
+        long sumY = hash.getSumY() - sumsY[slot];
+        if (sumX % population != 0 || sumY % population != 0) return null;
+        long dx = sumX / population;
+        long dy = sumY / population;
+        long moved = dx == 0 && dy == 0 ? hashes[slot] : CellHash.move(hashes[slot], dx, dy);
+        if (moved != hash.getHash()) return null;
+        return new Period(generation - hashGenerations[slot], generation, dx, dy, population);
+    }
+
+    public synchronized Period getPeriod() {
+        return period;
+    }
+
+    /**
+     * A world that repeats every {@code length} generations and moves by (dx, dy) per period.
+     * The repetition was noticed at {@code generation}, it may have started a few generations earlier.
+     */
+    public static final class Period {
+        private final long length;
+        private final long generation;
+        private final long dx, dy;
+        private final long population;
+
+        private Period(long length, long generation, long dx, long dy, long population) {
+            this.length = length;
+            this.generation = generation;
+            this.dx = dx;
+            this.dy = dy;
+            this.population = population;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public long getDx() {
+            return dx;
+        }
+
+        public long getDy() {
+            return dy;
+        }
+
+        public long getPopulation() {
+            return population;
+        }
+
+        public boolean isMoving() {
+            return dx != 0 || dy != 0;
+        }
+
+        @Override
+        public String toString() {
+            if (population == 0) return "extinct at generation " + generation;
+            return "period " + length + " at generation " + generation + (isMoving() ? " moving by " + dx + "/" + dy : "");
+        }
+    }
+}
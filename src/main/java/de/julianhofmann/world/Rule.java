@@ -0,0 +1,185 @@
+package de.julianhofmann.world;
+
+import java.util.Base64;
+
+/**
+ * A rule in B/S notation ("B3/S23" or "23/3"), a multi-state Generations rule ("B2/S/C3" or "345/2/4")
+ * or a non-totalistic rule in MAP notation. The rule is compiled into a table that is indexed by the
+ * state of a cell and its 9-bit neighborhood, so computing the next state is a single lookup.
+ * <p>
+ * The neighborhood has one bit per cell: NW = 256, N = 128, NE = 64, W = 32, center = 16, E = 8, SW = 4, S = 2, SE = 1.
+ * Only cells with state 1 are alive, higher states are dying and count as dead neighbors.
+ */
+public final class Rule {
+    public static final Rule CONWAY = parse("B3/S23");
+    public static final int CENTER = 1 << 4;
+    private static final int MAX_STATES = Byte.MAX_VALUE;
+    private static final int MAP_LENGTH = 86;
+
+    private final String notation;
+    private final int states;
+    private final int birth, survival;
+    private final boolean totalistic;
+    private final byte[] table;
+
+    private Rule(String notation, int states, int birth, int survival, boolean totalistic, byte[] table) {
+        this.notation = notation;
+        this.states = states;
+        this.birth = birth;
+        this.survival = survival;
+        this.totalistic = totalistic;
+        this.table = table;
+    }
+
+    /* ********************** Parsing ************************* */
+
+    /**
+     * @throws IllegalArgumentException if the notation is invalid or the rule is not supported
+     */
+    public static Rule parse(String notation) {
+        String rule = notation.trim();
+        if (rule.regionMatches(true, 0, "MAP", 0, 3)) {
+            return parseMap(rule.substring(3));
+        }
+
+        String[] parts = rule.toUpperCase().split("/", -1);
+        if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("Invalid rule: " + notation);
+
+        String birth, survival, states = null;
+        if (parts[0].startsWith("B") && parts[1].startsWith("S")) {
+            birth = parts[0].substring(1);
+            survival = parts[1].substring(1);
+        } else if (parts[0].startsWith("S") && parts[1].startsWith("B")) {
+            survival = parts[0].substring(1);
+            birth = parts[1].substring(1);
+        } else {
+            survival = parts[0];
+            birth = parts[1];
+        }
+        if (parts.length == 3) {
+            states = parts[2].startsWith("C") || parts[2].startsWith("G") ? parts[2].substring(1) : parts[2];
+        }
+
+        return create(parseCounts(birth, notation), parseCounts(survival, notation), states != null ? parseStates(states, notation) : 2);
+    }
+
+    private static int parseCounts(String counts, String notation) {
+        int mask = 0;
+        for (char c : counts.toCharArray()) {
+            if (c < '0' || c > '8') throw new IllegalArgumentException("Invalid rule: " + notation);
+            mask |= 1 << (c - '0');
+        }
+        return mask;
+    }
+
+    private static int parseStates(String states, String notation) {
+        try {
+            int result = Integer.parseInt(states);
+            if (result >= 2 && result <= MAX_STATES) return result;
+        } catch (NumberFormatException ignore) { }
+        throw new IllegalArgumentException("Invalid number of states: " + notation);
+    }
+
+    private static Rule create(int birth, int survival, int states) {
+        if ((birth & 1) != 0) throw new IllegalArgumentException("Rules with B0 are not supported");
+
+        byte[] table = new byte[states << 9];
+        for (int neighborhood = 0; neighborhood < 512; neighborhood++) {
+            int count = Integer.bitCount(neighborhood & ~CENTER);
+            table[neighborhood] = (byte) ((birth >> count) & 1);
+            table[(1 << 9) | neighborhood] = (byte) (((survival >> count) & 1) != 0 ? 1 : (states > 2 ? 2 : 0));
+            for (int state = 2; state < states; state++) {
+                table[(state << 9) | neighborhood] = (byte) (state + 1 < states ? state + 1 : 0);
+            }
+        }
+
+        StringBuilder notation = new StringBuilder("B");
+        appendCounts(notation, birth);
+        notation.append("/S");
+        appendCounts(notation, survival);
+        if (states > 2) notation.append("/C").append(states);
+
+        return new Rule(notation.toString(), states, birth, survival, true, table);
+    }
+
+    private static void appendCounts(StringBuilder builder, int mask) {
+        for (int count = 0; count <= 8; count++) {
+            if ((mask >> count & 1) != 0) builder.append(count);
+        }
+    }
+
+    /**
+     * Parses the base64 encoded 512 bit table of a MAP rule, the first bit belongs to the empty neighborhood.
+     */
+    private static Rule parseMap(String map) {
+        if (map.length() < MAP_LENGTH) throw new IllegalArgumentException("Invalid MAP rule: " + map);
+        byte[] bits;
+        try {
+            bits = Base64.getDecoder().decode(map.substring(0, MAP_LENGTH) + "==");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid MAP rule: " + map, e);
+        }
+
+        byte[] table = new byte[2 << 9];
+        for (int neighborhood = 0; neighborhood < 512; neighborhood++) {
+            byte next = (byte) ((bits[neighborhood >> 3] >> (7 - (neighborhood & 7))) & 1);
+            table[((neighborhood & CENTER) != 0 ? 1 << 9 : 0) | neighborhood] = next;
+        }
+        if (table[0] != 0) throw new IllegalArgumentException("Rules with B0 are not supported");
+
+        return new Rule("MAP" + map.substring(0, MAP_LENGTH), 2, 0, 0, false, table);
+    }
+
+    /* ********************** Lookup ************************* */
+
+    /**
+     * Returns the next state of a cell, the center bit of the neighborhood has to be set if the cell is alive.
+     */
+    public byte next(int state, int neighborhood) {
+        return table[(state << 9) | neighborhood];
+    }
+
+    /* ********************** Getters ************************* */
+
+    public int getStates() {
+        return states;
+    }
+
+    /**
+     * Whether the next state only depends on the number of living neighbors.
+     */
+    public boolean isTotalistic() {
+        return totalistic;
+    }
+
+    /**
+     * Bit n is set if a dead cell with n living neighbors is born, only for totalistic rules.
+     */
+    public int getBirth() {
+        return birth;
+    }
+
+    /**
+     * Bit n is set if a living cell with n living neighbors survives, only for totalistic rules.
+     */
+    public int getSurvival() {
+        return survival;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Rule)) return false;
+        return notation.equals(((Rule) o).notation);
+    }
+
+    @Override
+    public int hashCode() {
+        return notation.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return notation;
+    }
+}
@@ -0,0 +1,16 @@
+package de.julianhofmann.world;
+
+import static de.julianhofmann.world.TiledEngine.TILE_SIZE;
+
+class ScalarTileKernel implements TileKernel {
+    @Override
+    public void step(long[] leftColumn, long[] column, long[] rightColumn, long[] result, int birth, int survival) {
+        for (int row = 0; row < TILE_SIZE; row++) {
+            result[row] = TiledEngine.nextRow(
+                    leftColumn[row], column[row], rightColumn[row],
+                    leftColumn[row + 1], column[row + 1], rightColumn[row + 1],
+                    leftColumn[row + 2], column[row + 2], rightColumn[row + 2],
+                    birth, survival);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package de.julianhofmann.world;
+
+import javafx.application.Platform;
+import javafx.beans.property.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The state of the simulation and its metrics, readable from any thread without touching JavaFX properties.
+ * Changes are mirrored into read-only properties on the FX thread. Several changes in a row are
+ * coalesced into a single {@link Platform#runLater(Runnable)}, so the simulation can't flood the FX thread.
+ */
+public class SimulationControl {
+    private final AtomicInteger state = new AtomicInteger(World.STOPPED);
+    private final AtomicReference<Metrics> metrics = new AtomicReference<>(new Metrics(0, 0, 0));
+    private final AtomicReference<PeriodDetector.Period> period = new AtomicReference<>();
+    private final AtomicBoolean mirrorScheduled = new AtomicBoolean();
+    private volatile boolean fxMirror;
+
+    private final ReadOnlyIntegerWrapper stateMirror = new ReadOnlyIntegerWrapper(World.STOPPED);
+    private final ReadOnlyLongWrapper generationMirror = new ReadOnlyLongWrapper();
+    private final ReadOnlyLongWrapper populationMirror = new ReadOnlyLongWrapper();
+    private final ReadOnlyDoubleWrapper generationsPerSecondMirror = new ReadOnlyDoubleWrapper();
+    private final ReadOnlyObjectWrapper<PeriodDetector.Period> periodMirror = new ReadOnlyObjectWrapper<>();
+
+    /* ********************** State ************************* */
+
+    public int getState() {
+        return state.get();
+    }
+
+    public boolean isRunning() {
+        return state.get() == World.RUNNING;
+    }
+
+    /**
+     * Changes the state if the transition is allowed: a stopped simulation can only be started and a
+     * paused one can only be continued or stopped.
+     *
+     * @return false if the transition isn't allowed
+     */
+    public boolean setState(int state) {
+        int current;
+        do {
+            current = this.state.get();
+            if (current == state) return true;
+            if (!isAllowed(current, state)) return false;
+        } while (!this.state.compareAndSet(current, state));
+        scheduleMirror();
+        return true;
+    }
+
+    private static boolean isAllowed(int from, int to) {
+        switch (to) {
+            case World.RUNNING:
+                return from == World.STOPPED || from == World.PAUSED;
+            case World.PAUSED:
+                return from == World.RUNNING;
+            case World.STOPPED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /* ********************** Metrics ************************* */
+
+    public Metrics getMetrics() {
+        return metrics.get();
+    }
+
+    void setGeneration(long generation, long population) {
+        metrics.getAndUpdate(m -> new Metrics(generation, population, m.generationsPerSecond));
+        scheduleMirror();
+    }
+
+    public void setGenerationsPerSecond(double generationsPerSecond) {
+        metrics.getAndUpdate(m -> new Metrics(m.generation, m.population, generationsPerSecond));
+        scheduleMirror();
+    }
+
+    /* ********************** Period ************************* */
+
+    /**
+     * The period of the world once the {@link PeriodDetector} has found one, null while the world still changes.
+     */
+    public PeriodDetector.Period getPeriod() {
+        return period.get();
+    }
+
+    void setPeriod(PeriodDetector.Period period) {
+        if (this.period.getAndSet(period) != period) scheduleMirror();
+    }
+
+    /* ********************** Mirror ************************* */
+
+    /**
+     * Has to be enabled once the JavaFX toolkit runs, before that the properties are updated on the calling thread.
+     */
+    public void setFxMirror(boolean fxMirror) {
+        this.fxMirror = fxMirror;
+    }
+
+    private void scheduleMirror() {
+        if (!fxMirror || Platform.isFxApplicationThread()) {
+            updateMirror();
+        } else if (mirrorScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::updateMirror);
+        }
+    }
+
+    private void updateMirror() {
+        mirrorScheduled.set(false);
+        Metrics metrics = this.metrics.get();
+        stateMirror.set(state.get());
+        generationMirror.set(metrics.generation);
+        populationMirror.set(metrics.population);
+        generationsPerSecondMirror.set(metrics.generationsPerSecond);
+        periodMirror.set(period.get());
+    }
+
+    public ReadOnlyIntegerProperty stateProperty() {
+        return stateMirror.getReadOnlyProperty();
+    }
+
+    public ReadOnlyLongProperty generationProperty() {
+        return generationMirror.getReadOnlyProperty();
+    }
+
+    public ReadOnlyLongProperty populationProperty() {
+        return populationMirror.getReadOnlyProperty();
+    }
+
+    public ReadOnlyDoubleProperty generationsPerSecondProperty() {
+        return generationsPerSecondMirror.getReadOnlyProperty();
+    }
+
+    public ReadOnlyObjectProperty<PeriodDetector.Period> periodProperty() {
+        return periodMirror.getReadOnlyProperty();
+    }
+
+    /**
+     * The generation and population of the latest snapshot and the measured simulation speed.
+     */
+    public static final class Metrics {
+        private final long generation;
+        private final long population;
+        private final double generationsPerSecond;
+
+        private Metrics(long generation, long population, double generationsPerSecond) {
+            this.generation = generation;
+            this.population = population;
+            this.generationsPerSecond = generationsPerSecond;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public long getPopulation() {
+            return population;
+        }
+
+        public double getGenerationsPerSecond() {
+            return generationsPerSecond;
+        }
+    }
+}
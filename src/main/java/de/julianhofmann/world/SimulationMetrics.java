@@ -0,0 +1,219 @@
+package de.julianhofmann.world;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Records the cost of every step of the simulation: how long it took, how many cells were evaluated,
+ * born and killed and how much memory the simulation thread allocated. Durations, cells and allocations
+ * are kept for the last {@link #WINDOW} steps, so percentiles and rates always describe the recent past.
+ * Asking the JVM for the allocations isn't free, so they are measured once per batch and counted for its last step.
+ * <p>
+ * A step is one generation, except for HashLife which can advance many generations at once. Counts that
+ * an engine doesn't provide are -1. Allocations of the worker threads of the bitboard engine are not included.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+    public static final int WINDOW = 1024;
+
+    private final long[] stepNanos = new long[WINDOW];
+    private final long[] stepGenerations = new long[WINDOW];
+    private final long[] stepCells = new long[WINDOW];
+    private final long[] stepAllocatedBytes = new long[WINDOW];
+    private int index;
+    private int count;
+
+    private long generations;
+    private long population;
+    private long births = -1, deaths = -1, evaluatedCells = -1;
+    private long totalBirths, totalDeaths;
+
+    /**
+     * The number of bytes the current thread has allocated so far or -1 if the JVM can't tell.
+     */
+    static long allocatedBytes() {
+        return Allocations.THREADS != null ? Allocations.THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    synchronized void record(long generations, long nanos, long population, long evaluatedCells, long births, long deaths) {
+        stepNanos[index] = nanos;
+        stepGenerations[index] = generations;
+        stepCells[index] = evaluatedCells;
+        stepAllocatedBytes[index] = Allocations.THREADS != null ? 0 : -1;
+        index = (index + 1) % WINDOW;
+        if (count < WINDOW) count++;
+
+        this.generations += generations;
+        this.population = population;
+        this.evaluatedCells = evaluatedCells;
+        this.births = births;
+        this.deaths = deaths;
+        if (births > 0) totalBirths += births;
+        if (deaths > 0) totalDeaths += deaths;
+    }
+
+    /**
+     * Adds the bytes a batch allocated to its last step.
+     */
+    synchronized void recordAllocated(long allocatedBytes) {
+        if (count > 0 && allocatedBytes >= 0) stepAllocatedBytes[(index + WINDOW - 1) % WINDOW] += allocatedBytes;
+    }
+
+    @Override
+    public synchronized void reset() {
+        index = 0;
+        count = 0;
+        generations = 0;
+        population = 0;
+        births = -1;
+        deaths = -1;
+        evaluatedCells = -1;
+        totalBirths = 0;
+        totalDeaths = 0;
+    }
+
+    /* ********************** Steps ************************* */
+
+    @Override
+    public synchronized long getGenerations() {
+        return generations;
+    }
+
+    @Override
+    public synchronized long getSteps() {
+        return count;
+    }
+
+    @Override
+    public synchronized long getLastStepNanos() {
+        return count > 0 ? stepNanos[(index + WINDOW - 1) % WINDOW] : 0;
+    }
+
+    /**
+     * The duration of a step in the window that {@code percentile} percent of the steps didn't exceed.
+     */
+    @Override
+    public long getStepNanosPercentile(double percentile) {
+        long[] nanos;
+        synchronized (this) {
+            if (count == 0) return 0;
+            nanos = Arrays.copyOf(stepNanos, count);
+        }
+        Arrays.sort(nanos);
+        int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * nanos.length);
+        return nanos[Math.max(rank - 1, 0)];
+    }
+
+    @Override
+    public long getStepNanosP50() {
+        return getStepNanosPercentile(50);
+    }
+
+    @Override
+    public long getStepNanosP90() {
+        return getStepNanosPercentile(90);
+    }
+
+    @Override
+    public long getStepNanosP99() {
+        return getStepNanosPercentile(99);
+    }
+
+    @Override
+    public long getStepNanosMax() {
+        return getStepNanosPercentile(100);
+    }
+
+    /* ********************** Cells ************************* */
+
+    @Override
+    public synchronized long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public synchronized long getBirths() {
+        return births;
+    }
+
+    @Override
+    public synchronized long getDeaths() {
+        return deaths;
+    }
+
+    @Override
+    public synchronized long getTotalBirths() {
+        return totalBirths;
+    }
+
+    @Override
+    public synchronized long getTotalDeaths() {
+        return totalDeaths;
+    }
+
+    @Override
+    public synchronized long getEvaluatedCells() {
+        return evaluatedCells;
+    }
+
+    /* ********************** Rates ************************* */
+
+    /**
+     * Generations per second of computing time, without the time the simulation waited.
+     */
+    @Override
+    public synchronized double getGenerationsPerSecond() {
+        return rate(stepGenerations);
+    }
+
+    /**
+     * Evaluated cells per second of computing time or -1 if the engine doesn't count them.
+     */
+    @Override
+    public synchronized double getCellsPerSecond() {
+        return rate(stepCells);
+    }
+
+    /**
+     * Allocated bytes per second of computing time or -1 if the JVM can't measure them.
+     */
+    @Override
+    public synchronized double getAllocatedBytesPerSecond() {
+        return rate(stepAllocatedBytes);
+    }
+
+    private double rate(long[] values) {
+        long total = 0;
+        long nanos = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] < 0) return -1;
+            total += values[i];
+            nanos += stepNanos[i];
+        }
+        return nanos > 0 ? total * 1_000_000_000d / nanos : 0;
+    }
+
+    /**
+     * Only loaded when the allocations are first measured. The thread bean of HotSpot is only looked up once,
+     * on other JVMs even its class may be missing.
+     */
+    private static final class Allocations {
+        private static final com.sun.management.ThreadMXBean THREADS = createThreadBean();
+
+        private static com.sun.management.ThreadMXBean createThreadBean() {
+            try {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                if (threads instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+                    if (hotSpotThreads.isThreadAllocatedMemorySupported()) {
+                        hotSpotThreads.setThreadAllocatedMemoryEnabled(true);
+                        return hotSpotThreads;
+                    }
+                }
+            } catch (LinkageError | UnsupportedOperationException ignore) {
+                // Not a HotSpot based JVM
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package de.julianhofmann.world;
+
+/**
+ * The attributes of {@link SimulationMetrics} that are published over JMX.
+ */
+public interface SimulationMetricsMBean {
+    long getGenerations();
+
+    long getSteps();
+
+    long getLastStepNanos();
+
+    long getStepNanosPercentile(double percentile);
+
+    long getStepNanosP50();
+
+    long getStepNanosP90();
+
+    long getStepNanosP99();
+
+    long getStepNanosMax();
+
+    long getPopulation();
+
+    long getBirths();
+
+    long getDeaths();
+
+    long getTotalBirths();
+
+    long getTotalDeaths();
+
+    long getEvaluatedCells();
+
+    double getGenerationsPerSecond();
+
+    double getCellsPerSecond();
+
+    double getAllocatedBytesPerSecond();
+
+    void reset();
+}
@@ -0,0 +1,111 @@
+package de.julianhofmann.world;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable copy of one generation. Readers get it from {@link World#acquireSnapshot()} without
+ * blocking the simulation and have to {@link #release()} it afterwards, so the cell set can be reused
+ * for a later snapshot once nobody reads it anymore.
+ */
+public final class Snapshot {
+    private final CellSet cells;
+    private final GenerationDiff diff;
+    private final long sequence;
+    private final long generation;
+    private final Queue<CellSet> pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private DensityPyramid density;
+    private TileIndex index;
+
+    Snapshot(CellSet cells, TileIndex index, GenerationDiff diff, long sequence, long generation, Queue<CellSet> pool) {
+        this.cells = cells;
+        this.index = index;
+        this.diff = diff;
+        this.sequence = sequence;
+        this.generation = generation;
+        this.pool = pool;
+    }
+
+    /**
+     * Must not be modified.
+     */
+    public CellSet getCells() {
+        return cells;
+    }
+
+    /**
+     * The number of generations since the simulation was started.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Increases with every published snapshot, also if the generation stays the same, e.g. after an edit.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * The cells that changed since the snapshot {@link GenerationDiff#getBaseSequence()} or null if that
+     * wasn't cheap to find out, e.g. after an edit or for HashLife.
+     */
+    public GenerationDiff getDiff() {
+        return diff;
+    }
+
+    /**
+     * The number of living or dying cells.
+     */
+    public int getPopulation() {
+        return cells.size();
+    }
+
+    /**
+     * The densities of the cells for zoomed out views. Must only be used while the snapshot is retained.
+     */
+    public synchronized DensityPyramid getDensity() {
+        if (density == null) density = new DensityPyramid(cells);
+        return density;
+    }
+
+    /**
+     * Whether {@link #forEachLiveInRect} is cheaper than looking at all cells.
+     */
+    public synchronized boolean isIndexed() {
+        return index != null;
+    }
+
+    /**
+     * Calls the consumer with every living cell in the rectangle, both corners inclusive. The first call builds
+     * an index of the cells unless the engine provided one, later calls only look at the cells in the rectangle.
+     */
+    public void forEachLiveInRect(int minX, int minY, int maxX, int maxY, TileIndex.CellConsumer consumer) {
+        TileIndex index;
+        synchronized (this) {
+            if (this.index == null) this.index = new TileIndex(cells);
+            index = this.index;
+        }
+        index.forEachLiveInRect(minX, minY, maxX, maxY, consumer);
+    }
+
+    /**
+     * Fails if the snapshot has already been released by everyone.
+     */
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) return false;
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            pool.offer(cells);
+        }
+    }
+}
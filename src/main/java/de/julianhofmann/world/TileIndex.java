@@ -0,0 +1,194 @@
+package de.julianhofmann.world;
+
+import java.util.Arrays;
+
+/**
+ * The living cells of a generation as 64x64 tiles of bitboards, so the cells in a rectangle can be
+ * found without looking at the other cells. Built once per snapshot, either from the cell set or
+ * directly from the tiles of the {@link TiledEngine}.
+ */
+public class TileIndex {
+    public static final int TILE_SIZE = 64;
+    private static final int TILE_SHIFT = 6;
+
+    // Open addressing from tile keys to the index of the tile in rows, -1 marks an empty slot
+    private long[] keys;
+    private int[] tiles;
+    private int mask;
+    private long[] rows;
+    private int size;
+
+    TileIndex(int expectedTiles) {
+        int capacity = 16;
+        while (capacity < expectedTiles * 2) capacity <<= 1;
+        allocate(capacity);
+        rows = new long[Math.max(expectedTiles, 1) * TILE_SIZE];
+    }
+
+    public TileIndex(CellSet cells) {
+        this(cells.size() / TILE_SIZE);
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) {
+                long key = cells.keyAt(slot);
+                int x = CellSet.x(key);
+                int y = CellSet.y(key);
+                int tile = tile(x >> TILE_SHIFT, y >> TILE_SHIFT, true);
+                rows[tile * TILE_SIZE + (y & (TILE_SIZE - 1))] |= 1L << (x & (TILE_SIZE - 1));
+            }
+        }
+    }
+
+    /**
+     * Adds the 64 rows of the tile (tx, ty), bit i of a row is column i.
+     */
+    void addTile(long tx, long ty, long[] tileRows) {
+        int tile = tile((int) tx, (int) ty, true);
+        for (int row = 0; row < TILE_SIZE; row++) {
+            rows[tile * TILE_SIZE + row] |= tileRows[row];
+        }
+    }
+
+    /**
+     * Calls the consumer with every living cell in the rectangle from (minX, minY) to (maxX, maxY), both inclusive.
+     */
+    public void forEachLiveInRect(int minX, int minY, int maxX, int maxY, CellConsumer consumer) {
+        if (minX > maxX || minY > maxY) return;
+        int minTileX = minX >> TILE_SHIFT;
+        int minTileY = minY >> TILE_SHIFT;
+        int maxTileX = maxX >> TILE_SHIFT;
+        int maxTileY = maxY >> TILE_SHIFT;
+
+        // Looking up every tile of the rectangle is only worth it if it has fewer tiles than the index
+        if ((long) (maxTileX - minTileX + 1) * (maxTileY - minTileY + 1) < size) {
+            for (int ty = minTileY; ty <= maxTileY; ty++) {
+                for (int tx = minTileX; tx <= maxTileX; tx++) {
+                    int tile = tile(tx, ty, false);
+                    if (tile >= 0) forEachLiveInTile(tile, tx, ty, minX, minY, maxX, maxY, consumer);
+                }
+            }
+        } else {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (tiles[slot] < 0) continue;
+                int tx = CellSet.x(keys[slot]);
+                int ty = CellSet.y(keys[slot]);
+                if (tx >= minTileX && tx <= maxTileX && ty >= minTileY && ty <= maxTileY) {
+                    forEachLiveInTile(tiles[slot], tx, ty, minX, minY, maxX, maxY, consumer);
+                }
+            }
+        }
+    }
+
+    private void forEachLiveInTile(int tile, int tx, int ty, int minX, int minY, int maxX, int maxY, CellConsumer consumer) {
+        int originX = tx << TILE_SHIFT;
+        int originY = ty << TILE_SHIFT;
+        int fromRow = Math.max(minY - originY, 0);
+        int toRow = Math.min(maxY - originY, TILE_SIZE - 1);
+        int fromColumn = Math.max(minX - originX, 0);
+        int toColumn = Math.min(maxX - originX, TILE_SIZE - 1);
+        long columns = (-1L << fromColumn) & (-1L >>> (TILE_SIZE - 1 - toColumn));
+        for (int row = fromRow; row <= toRow; row++) {
+            long bits = rows[tile * TILE_SIZE + row] & columns;
+            while (bits != 0) {
+                consumer.accept(originX + Long.numberOfTrailingZeros(bits), originY + row);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * The cells that were born or died since {@code previous}, found by comparing the rows of the tiles,
+     * so it costs time in proportion to the tiles instead of the cells.
+     *
+     * @param baseSequence the sequence number of the snapshot of {@code previous}
+     */
+    GenerationDiff diff(TileIndex previous, long baseSequence) {
+        GenerationDiff.Builder diff = new GenerationDiff.Builder();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (tiles[slot] < 0) continue;
+            int tx = CellSet.x(keys[slot]);
+            int ty = CellSet.y(keys[slot]);
+            int before = previous.tile(tx, ty, false);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                long now = rows[tiles[slot] * TILE_SIZE + row];
+                long then = before >= 0 ? previous.rows[before * TILE_SIZE + row] : 0;
+                if (now != then) addChanges(diff, tx, ty, row, now, then);
+            }
+        }
+        for (int slot = 0; slot < previous.keys.length; slot++) {
+            if (previous.tiles[slot] < 0) continue;
+            int tx = CellSet.x(previous.keys[slot]);
+            int ty = CellSet.y(previous.keys[slot]);
+            if (tile(tx, ty, false) >= 0) continue;
+            for (int row = 0; row < TILE_SIZE; row++) {
+                long then = previous.rows[previous.tiles[slot] * TILE_SIZE + row];
+                if (then != 0) addChanges(diff, tx, ty, row, 0, then);
+            }
+        }
+        return diff.build(baseSequence);
+    }
+
+    private static void addChanges(GenerationDiff.Builder diff, int tx, int ty, int row, long now, long then) {
+        int originX = tx << TILE_SHIFT;
+        int y = (ty << TILE_SHIFT) + row;
+        for (long born = now & ~then; born != 0; born &= born - 1) {
+            diff.addBirth(CellSet.key(originX + Long.numberOfTrailingZeros(born), y));
+        }
+        for (long died = then & ~now; died != 0; died &= died - 1) {
+            diff.addDeath(CellSet.key(originX + Long.numberOfTrailingZeros(died), y));
+        }
+    }
+
+    /**
+     * The number of tiles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The index of the tile in rows or -1 if it doesn't exist and {@code create} is false.
+     */
+    private int tile(int tx, int ty, boolean create) {
+        long key = CellSet.key(tx, ty);
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (tiles[slot] >= 0) {
+            if (keys[slot] == key) return tiles[slot];
+            slot = (slot + 1) & mask;
+        }
+        if (!create) return -1;
+
+        int tile = size++;
+        keys[slot] = key;
+        tiles[slot] = tile;
+        if ((tile + 1) * TILE_SIZE > rows.length) rows = Arrays.copyOf(rows, rows.length * 2);
+        if (size * 2 > keys.length) resize();
+        return tile;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldTiles = tiles;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldTiles[i] < 0) continue;
+            long hash = oldKeys[i] * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (tiles[slot] >= 0) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            tiles[slot] = oldTiles[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        tiles = new int[capacity];
+        Arrays.fill(tiles, -1);
+        mask = capacity - 1;
+    }
+
+    @FunctionalInterface
+    public interface CellConsumer {
+        void accept(int x, int y);
+    }
+}
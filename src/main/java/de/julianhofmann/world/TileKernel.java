@@ -0,0 +1,24 @@
+package de.julianhofmann.world;
+
+/**
+ * Computes the next generation of a 64x64 tile. The columns contain {@link TiledEngine#TILE_SIZE} + 2 rows:
+ * the last row of the tile above, the rows of the tile itself and the first row of the tile below.
+ * The left and right columns are the same rows shifted by one cell, see {@link TiledEngine#nextRow}.
+ */
+interface TileKernel {
+    String VECTOR_KERNEL = "de.julianhofmann.world.VectorTileKernel";
+
+    void step(long[] leftColumn, long[] column, long[] rightColumn, long[] result, int birth, int survival);
+
+    /**
+     * Uses the Vector API kernel if it was compiled (maven profile "vector") and the
+     * jdk.incubator.vector module is available at runtime, otherwise the scalar one.
+     */
+    static TileKernel create() {
+        try {
+            return (TileKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ignore) {
+            return new ScalarTileKernel();
+        }
+    }
+}
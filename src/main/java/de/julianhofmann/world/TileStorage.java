@@ -0,0 +1,246 @@
+package de.julianhofmann.world;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static de.julianhofmann.world.TiledEngine.TILE_SIZE;
+
+/**
+ * Memory for the rows of 64x64 tiles, addressed by slot numbers instead of one array per tile.
+ * The rows are allocated in slabs of {@link #SLAB_TILES} tiles, so there are only a few large
+ * blocks no matter how many tiles exist, and freed slots are reused.
+ * <p>
+ * The off-heap storage keeps the slabs in direct buffers outside of the Java heap, so the garbage
+ * collector never has to look at them. {@link #close()} releases them immediately.
+ */
+abstract class TileStorage implements AutoCloseable {
+    static final int SLAB_SHIFT = 10;
+    static final int SLAB_TILES = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = SLAB_TILES - 1;
+
+    private int[] freeSlots = new int[SLAB_TILES];
+    private int freeCount;
+    private int slotCount;
+    private int slabCount;
+    private boolean closed;
+
+    static TileStorage create(boolean offHeap) {
+        return offHeap ? new DirectTileStorage() : new HeapTileStorage();
+    }
+
+    /**
+     * Returns a slot with all rows set to 0.
+     */
+    int allocate() {
+        if (closed) throw new IllegalStateException("Tile storage is closed");
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot >> SLAB_SHIFT == slabCount) {
+                addSlab(slabCount++);
+            }
+        }
+        clear(slot);
+        return slot;
+    }
+
+    void free(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Frees all slots but keeps the memory for reuse.
+     */
+    void freeAll() {
+        freeCount = 0;
+        slotCount = 0;
+    }
+
+    abstract long get(int slot, int row);
+
+    abstract void set(int slot, int row, long value);
+
+    /**
+     * Copies the rows of a tile into {@code rows}, starting at {@code offset}.
+     */
+    abstract void read(int slot, long[] rows, int offset);
+
+    abstract void write(int slot, long[] rows);
+
+    abstract void clear(int slot);
+
+    protected abstract void addSlab(int slab);
+
+    protected abstract void releaseSlabs();
+
+    static int slab(int slot) {
+        return slot >> SLAB_SHIFT;
+    }
+
+    static int offset(int slot) {
+        return (slot & SLAB_MASK) * TILE_SIZE;
+    }
+
+    int getUsedSlots() {
+        return slotCount - freeCount;
+    }
+
+    long getAllocatedBytes() {
+        return (long) slabCount * SLAB_TILES * TILE_SIZE * Long.BYTES;
+    }
+
+    boolean isOffHeap() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            releaseSlabs();
+        }
+    }
+
+    /* ********************** Heap ************************* */
+
+    private static final class HeapTileStorage extends TileStorage {
+        private long[][] slabs = new long[0][];
+
+        @Override
+        long get(int slot, int row) {
+            return slabs[slab(slot)][offset(slot) + row];
+        }
+
+        @Override
+        void set(int slot, int row, long value) {
+            slabs[slab(slot)][offset(slot) + row] = value;
+        }
+
+        @Override
+        void read(int slot, long[] rows, int offset) {
+            System.arraycopy(slabs[slab(slot)], offset(slot), rows, offset, TILE_SIZE);
+        }
+
+        @Override
+        void write(int slot, long[] rows) {
+            System.arraycopy(rows, 0, slabs[slab(slot)], offset(slot), TILE_SIZE);
+        }
+
+        @Override
+        void clear(int slot) {
+            Arrays.fill(slabs[slab(slot)], offset(slot), offset(slot) + TILE_SIZE, 0);
+        }
+
+        @Override
+        protected void addSlab(int slab) {
+            slabs = Arrays.copyOf(slabs, slab + 1);
+            slabs[slab] = new long[SLAB_TILES * TILE_SIZE];
+        }
+
+        @Override
+        protected void releaseSlabs() {
+            slabs = new long[0][];
+        }
+    }
+
+    /* ********************** Off-heap ************************* */
+
+    private static final class DirectTileStorage extends TileStorage {
+        private static final Method INVOKE_CLEANER;
+        private static final Object UNSAFE;
+
+        static {
+            Method invokeCleaner = null;
+            Object unsafe = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException ignore) {
+                // The buffers are freed by the garbage collector instead
+            }
+            INVOKE_CLEANER = invokeCleaner;
+            UNSAFE = unsafe;
+        }
+
+        private ByteBuffer[] buffers = new ByteBuffer[0];
+        private LongBuffer[] slabs = new LongBuffer[0];
+
+        @Override
+        long get(int slot, int row) {
+            return slabs[slab(slot)].get(offset(slot) + row);
+        }
+
+        @Override
+        void set(int slot, int row, long value) {
+            slabs[slab(slot)].put(offset(slot) + row, value);
+        }
+
+        @Override
+        void read(int slot, long[] rows, int offset) {
+            LongBuffer slab = slabs[slab(slot)];
+            int start = offset(slot);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                rows[offset + row] = slab.get(start + row);
+            }
+        }
+
+        @Override
+        void write(int slot, long[] rows) {
+            LongBuffer slab = slabs[slab(slot)];
+            int start = offset(slot);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                slab.put(start + row, rows[row]);
+            }
+        }
+
+        @Override
+        void clear(int slot) {
+            LongBuffer slab = slabs[slab(slot)];
+            int start = offset(slot);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                slab.put(start + row, 0);
+            }
+        }
+
+        @Override
+        protected void addSlab(int slab) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SLAB_TILES * TILE_SIZE * Long.BYTES).order(ByteOrder.nativeOrder());
+            buffers = Arrays.copyOf(buffers, slab + 1);
+            slabs = Arrays.copyOf(slabs, slab + 1);
+            buffers[slab] = buffer;
+            slabs[slab] = buffer.asLongBuffer();
+        }
+
+        @Override
+        protected void releaseSlabs() {
+            if (INVOKE_CLEANER != null) {
+                for (ByteBuffer buffer : buffers) {
+                    try {
+                        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    } catch (ReflectiveOperationException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            buffers = new ByteBuffer[0];
+            slabs = new LongBuffer[0];
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return true;
+        }
+    }
+}
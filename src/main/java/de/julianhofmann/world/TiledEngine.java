@@ -0,0 +1,690 @@
+package de.julianhofmann.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stores the world as 64x64 tiles of bitboards (one long per row, one bit per cell) and computes
+ * a whole row of 64 cells at once using bit-parallel adders.
+ * With more than one thread the tiles are split into bands that are computed on a {@link ForkJoinPool}.
+ * <p>
+ * Every tile remembers whether it changed in the last generation and in the last two generations.
+ * A tile whose whole neighborhood did not change is kept as it is, and a tile whose neighborhood
+ * is the same as two generations ago (period 2, like blinkers) just swaps back to its previous state.
+ * <p>
+ * The rows of the tiles live in a {@link TileStorage}, optionally outside of the Java heap. The heap then
+ * only holds the index of the tiles, which keeps garbage collection pauses short for huge worlds.
+ */
+public class TiledEngine implements Engine {
+    public static final int TILE_SIZE = 64;
+    private static final int TILE_SHIFT = 6;
+    private static final int MIN_PARALLEL_TILES = 16;
+    static final int CONWAY_BIRTH = 1 << 3;
+    static final int CONWAY_SURVIVAL = 1 << 2 | 1 << 3;
+    private static final TileKernel KERNEL = TileKernel.create();
+    private static final Comparator<Tile> TILE_ORDER = Comparator.comparingLong(tile -> tile.key);
+
+    private static final int COMPUTE = 0;
+    private static final int KEEP = 1;
+    private static final int SWAP = 2;
+
+    private final HashMap<Long, Tile> tiles = new HashMap<>();
+    private final HashMap<Long, Tile> createdTiles = new HashMap<>();
+    private final ArrayList<Tile> removedTiles = new ArrayList<>();
+    private final TileStorage storage;
+    private Tile[] work = new Tile[0];
+    private int workSize;
+    private int birth = CONWAY_BIRTH;
+    private int survival = CONWAY_SURVIVAL;
+    private int threads = 1;
+    private ForkJoinPool pool;
+    private long generation;
+    private long population;
+    private long computedTiles;
+    private long births, deaths;
+    private final CellHash hash = new CellHash();
+    private boolean hashing;
+
+    public TiledEngine() {
+        this(false);
+    }
+
+    /**
+     * @param offHeap whether the rows of the tiles are stored in direct buffers outside of the heap
+     */
+    public TiledEngine(boolean offHeap) {
+        storage = TileStorage.create(offHeap);
+    }
+
+    /* ********************** Conversion ************************* */
+
+    @Override
+    public void setCells(CellSet cells) {
+        tiles.clear();
+        storage.freeAll();
+        generation = 0;
+        population = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) {
+                long x = CellSet.x(cells.keyAt(slot));
+                long y = CellSet.y(cells.keyAt(slot));
+                Tile tile = tiles.computeIfAbsent(tileKey(x >> TILE_SHIFT, y >> TILE_SHIFT), this::newTile);
+                int row = (int) (y & (TILE_SIZE - 1));
+                storage.set(tile.rows, row, storage.get(tile.rows, row) | 1L << (x & (TILE_SIZE - 1)));
+            }
+        }
+        long[] rows = new long[TILE_SIZE];
+        for (Tile tile : tiles.values()) {
+            storage.read(tile.rows, rows, 0);
+            for (long row : rows) {
+                tile.population += Long.bitCount(row);
+                tile.columns |= row;
+            }
+            // The history of the tiles is unknown, so all of them have to be computed twice before they can swap
+            tile.changed = true;
+            tile.changedTwo = true;
+            tile.unknownHistory = true;
+            population += tile.population;
+        }
+        if (hashing) computeHash();
+    }
+
+    @Override
+    public void getCells(CellSet cells) {
+        cells.clear();
+        long[] rows = new long[TILE_SIZE];
+        for (Tile tile : tiles.values()) {
+            if (tile.population == 0) continue;
+            long originX = tileX(tile.key) << TILE_SHIFT;
+            long originY = tileY(tile.key) << TILE_SHIFT;
+            storage.read(tile.rows, rows, 0);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                long bits = rows[row];
+                while (bits != 0) {
+                    int column = Long.numberOfTrailingZeros(bits);
+                    cells.set(CellSet.key((int) (originX + column), (int) (originY + row)), (byte) 1);
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * An index of the living cells, which is much cheaper to build from the tiles than from the cells.
+     */
+    public TileIndex getTiles() {
+        TileIndex index = new TileIndex(tiles.size());
+        long[] rows = new long[TILE_SIZE];
+        for (Tile tile : tiles.values()) {
+            if (tile.population == 0) continue;
+            storage.read(tile.rows, rows, 0);
+            index.addTile(tileX(tile.key), tileY(tile.key), rows);
+        }
+        return index;
+    }
+
+    /**
+     * Only supports totalistic rules with two states.
+     */
+    @Override
+    public void setRule(Rule rule) {
+        if (rule.getBirth() != birth || rule.getSurvival() != survival) {
+            birth = rule.getBirth();
+            survival = rule.getSurvival();
+            // The previous generations follow the old rule
+            for (Tile tile : tiles.values()) {
+                tile.changed = true;
+                tile.changedTwo = true;
+                tile.unknownHistory = true;
+            }
+        }
+    }
+
+    /* ********************** Simulation ************************* */
+
+    @Override
+    public void step() {
+        collectWork();
+
+        if (threads > 1 && workSize >= MIN_PARALLEL_TILES) {
+            // Sorting puts tiles of the same column next to each other, so every task gets a vertical band
+            Arrays.sort(work, 0, workSize, TILE_ORDER);
+            getPool().invoke(new StepTask(0, workSize, Math.max(1, workSize / (threads * 4))));
+        } else {
+            stepTiles(0, workSize);
+        }
+
+        long population = 0;
+        long computedTiles = 0;
+        long births = 0;
+        long deaths = 0;
+        long hashChange = 0;
+        long sumXChange = 0;
+        long sumYChange = 0;
+        for (int i = 0; i < workSize; i++) {
+            Tile tile = work[i];
+            work[i] = null;
+            if (tile.action == COMPUTE) computedTiles++;
+            tile.commit();
+            population += tile.population;
+            if (tile.action != KEEP) {
+                births += tile.births;
+                deaths += tile.deaths;
+                if (hashing) {
+                    hashChange = CellHash.add(hashChange, tile.hashChange);
+                    sumXChange += tile.sumXChange;
+                    sumYChange += tile.sumYChange;
+                }
+            }
+            // Only tiles that have been empty for three generations can be dropped, otherwise their neighbors would miss a change
+            if (tile.population == 0 && !tile.changed && !tile.changedTwo && !tile.touched) {
+                removedTiles.add(tile);
+            }
+            tile.touched = false;
+        }
+        for (Tile tile : removedTiles) {
+            tiles.remove(tile.key);
+            freeTile(tile);
+        }
+        removedTiles.clear();
+
+        this.population = population;
+        this.computedTiles = computedTiles;
+        this.births = births;
+        this.deaths = deaths;
+        if (hashing) hash.add(hashChange, births - deaths, sumXChange, sumYChange);
+        generation++;
+    }
+
+    /**
+     * Collects all tiles that may contain living cells in the next generation: every
+     * existing tile and every neighbor that touches a living cell on its border.
+     */
+    private void collectWork() {
+        createdTiles.clear();
+        ensureWorkCapacity(tiles.size());
+        workSize = 0;
+        for (Tile tile : tiles.values()) {
+            work[workSize++] = tile;
+            if (tile.population == 0) continue;
+
+            long tx = tileX(tile.key);
+            long ty = tileY(tile.key);
+            long first = storage.get(tile.rows, 0);
+            long last = storage.get(tile.rows, TILE_SIZE - 1);
+
+            if (first != 0) touch(tx, ty - 1);
+            if (last != 0) touch(tx, ty + 1);
+            if ((tile.columns & 1L) != 0) touch(tx - 1, ty);
+            if (tile.columns < 0) touch(tx + 1, ty);
+            if ((first & 1L) != 0) touch(tx - 1, ty - 1);
+            if (first < 0) touch(tx + 1, ty - 1);
+            if ((last & 1L) != 0) touch(tx - 1, ty + 1);
+            if (last < 0) touch(tx + 1, ty + 1);
+        }
+
+        ensureWorkCapacity(workSize + createdTiles.size());
+        for (Tile tile : createdTiles.values()) {
+            tiles.put(tile.key, tile);
+            work[workSize++] = tile;
+        }
+    }
+
+    private void touch(long tx, long ty) {
+        long key = tileKey(tx, ty);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = createdTiles.computeIfAbsent(key, this::newTile);
+        }
+        tile.touched = true;
+    }
+
+    private void ensureWorkCapacity(int size) {
+        if (work.length < size) {
+            work = Arrays.copyOf(work, size * 2);
+        }
+    }
+
+    private void stepTiles(int from, int to) {
+        Buffers buffers = new Buffers();
+        for (int i = from; i < to; i++) {
+            stepTile(work[i], buffers);
+        }
+    }
+
+    /**
+     * Copies the rows of {@code tile} into {@code column} with the last row of {@code above} in front
+     * and the first row of {@code below} at the end. Missing tiles are empty.
+     */
+    private void fillColumn(long[] column, Tile above, Tile tile, Tile below) {
+        column[0] = above != null ? storage.get(above.rows, TILE_SIZE - 1) : 0;
+        if (tile != null) {
+            storage.read(tile.rows, column, 1);
+        } else {
+            Arrays.fill(column, 1, TILE_SIZE + 1, 0);
+        }
+        column[TILE_SIZE + 1] = below != null ? storage.get(below.rows, 0) : 0;
+    }
+
+    /**
+     * Decides how the tile advances and computes its next generation into {@code tile.next} if needed.
+     */
+    private void stepTile(Tile tile, Buffers buffers) {
+        long tx = tileX(tile.key);
+        long ty = tileY(tile.key);
+        Tile north = getTile(tx, ty - 1);
+        Tile south = getTile(tx, ty + 1);
+        Tile west = getTile(tx - 1, ty);
+        Tile east = getTile(tx + 1, ty);
+        Tile northWest = getTile(tx - 1, ty - 1);
+        Tile northEast = getTile(tx + 1, ty - 1);
+        Tile southWest = getTile(tx - 1, ty + 1);
+        Tile southEast = getTile(tx + 1, ty + 1);
+
+        if (!tile.changed && !isChanged(north) && !isChanged(south) && !isChanged(west) && !isChanged(east)
+                && !isChanged(northWest) && !isChanged(northEast) && !isChanged(southWest) && !isChanged(southEast)) {
+            tile.action = KEEP;
+            return;
+        }
+        if (!tile.changedTwo && !isChangedTwo(north) && !isChangedTwo(south) && !isChangedTwo(west) && !isChangedTwo(east)
+                && !isChangedTwo(northWest) && !isChangedTwo(northEast) && !isChangedTwo(southWest) && !isChangedTwo(southEast)) {
+            tile.action = SWAP;
+            return;
+        }
+
+        tile.action = COMPUTE;
+        // Every column gets an extra row above and below, so the kernel never has to look at other tiles
+        long[] leftColumn = buffers.leftColumn;
+        long[] column = buffers.column;
+        long[] rightColumn = buffers.rightColumn;
+        long[] result = buffers.result;
+        long[] previous = buffers.previous;
+        fillColumn(column, north, tile, south);
+        fillColumn(leftColumn, northWest, west, southWest);
+        fillColumn(rightColumn, northEast, east, southEast);
+        for (int row = 0; row < TILE_SIZE + 2; row++) {
+            leftColumn[row] = (column[row] << 1) | (leftColumn[row] >>> (TILE_SIZE - 1));
+            rightColumn[row] = (column[row] >>> 1) | (rightColumn[row] << (TILE_SIZE - 1));
+        }
+        KERNEL.step(leftColumn, column, rightColumn, result, birth, survival);
+        storage.read(tile.previous, previous, 0);
+
+        long population = 0;
+        long columns = 0;
+        long changed = 0;
+        long changedTwo = 0;
+        long births = 0;
+        long deaths = 0;
+        for (int row = 0; row < TILE_SIZE; row++) {
+            long next = result[row];
+            long current = column[row + 1];
+            population += Long.bitCount(next);
+            columns |= next;
+            changed |= next ^ current;
+            changedTwo |= next ^ previous[row];
+            births += Long.bitCount(next & ~current);
+            deaths += Long.bitCount(current & ~next);
+        }
+        if (hashing) computeHashChange(tile, column, 1, result);
+        storage.write(tile.next, result);
+        tile.nextPopulation = population;
+        tile.nextColumns = columns;
+        tile.nextChanged = changed != 0;
+        // The previous slot doesn't hold a generation of this rule yet
+        tile.nextChangedTwo = changedTwo != 0 || tile.unknownHistory;
+        tile.nextBirths = births;
+        tile.nextDeaths = deaths;
+    }
+
+    /**
+     * Computes how the {@link CellHash} changes from {@code before} (starting at {@code offset}) to {@code after}
+     * into the next fields of the tile.
+     */
+    private static void computeHashChange(Tile tile, long[] before, int offset, long[] after) {
+        long hashChange = 0;
+        long sumXChange = 0;
+        long sumYChange = 0;
+        long populationChange = 0;
+        for (int row = 0; row < TILE_SIZE; row++) {
+            long next = after[row];
+            long current = before[row + offset];
+            if (next == current) continue;
+            long born = next & ~current;
+            long died = current & ~next;
+            int rowChange = Long.bitCount(born) - Long.bitCount(died);
+            populationChange += rowChange;
+
+            // The position of the tile is multiplied in once at the end
+            long rowHash = CellHash.subtract(CellHash.row(born), CellHash.row(died));
+            hashChange = CellHash.add(hashChange, CellHash.multiply(rowHash, CellHash.powerB(row)));
+            sumXChange += CellHash.sumOfBitIndices(born) - CellHash.sumOfBitIndices(died);
+            sumYChange += (long) rowChange * row;
+        }
+        tile.nextHashChange = CellHash.multiply(hashChange, tile.hashOrigin);
+        tile.nextSumXChange = sumXChange + populationChange * (tileX(tile.key) << TILE_SHIFT);
+        tile.nextSumYChange = sumYChange + populationChange * (tileY(tile.key) << TILE_SHIFT);
+    }
+
+    /**
+     * Computes the hash from scratch and the changes of the last generation of every tile, so a swap can reverse them.
+     */
+    private void computeHash() {
+        hash.clear();
+        long[] empty = new long[TILE_SIZE];
+        long[] previous = new long[TILE_SIZE];
+        long[] rows = new long[TILE_SIZE];
+        for (Tile tile : tiles.values()) {
+            storage.read(tile.rows, rows, 0);
+            storage.read(tile.previous, previous, 0);
+            computeHashChange(tile, empty, 0, rows);
+            hash.add(tile.nextHashChange, tile.population, tile.nextSumXChange, tile.nextSumYChange);
+            computeHashChange(tile, previous, 0, rows);
+            tile.hashChange = tile.nextHashChange;
+            tile.sumXChange = tile.nextSumXChange;
+            tile.sumYChange = tile.nextSumYChange;
+        }
+    }
+
+    /**
+     * Computes 64 cells of a row at once. Bit i of every word is column i; the left/right words
+     * are the rows shifted by one column, including the border bit of the neighboring tile.
+     * Bit n of {@code birth} and {@code survival} is set if a cell with n living neighbors is born or survives.
+     */
+    static long nextRow(long aboveLeft, long above, long aboveRight,
+                        long middleLeft, long middle, long middleRight,
+                        long belowLeft, long below, long belowRight,
+                        int birth, int survival) {
+        // Sum up the rows of three neighbors each with full adders (sum + 2 * carry)
+        long aboveSum = aboveLeft ^ above ^ aboveRight;
+        long aboveCarry = (aboveLeft & above) | (aboveRight & (aboveLeft ^ above));
+        long middleSum = middleLeft ^ middleRight;
+        long middleCarry = middleLeft & middleRight;
+        long belowSum = belowLeft ^ below ^ belowRight;
+        long belowCarry = (belowLeft & below) | (belowRight & (belowLeft ^ below));
+
+        // Count bits: ones + 2 * twos + 4 * fours (+ 8 * eights)
+        long ones = aboveSum ^ middleSum ^ belowSum;
+        long onesCarry = (aboveSum & middleSum) | (belowSum & (aboveSum ^ middleSum));
+        long carrySum = aboveCarry ^ middleCarry ^ belowCarry;
+        long carryCarry = (aboveCarry & middleCarry) | (belowCarry & (aboveCarry ^ middleCarry));
+        long twos = carrySum ^ onesCarry;
+        long fours = carryCarry ^ (carrySum & onesCarry);
+        long eights = carryCarry & carrySum & onesCarry;
+
+        if (birth == CONWAY_BIRTH && survival == CONWAY_SURVIVAL) {
+            // Alive if the count is 3, or 2 and the cell is already alive
+            return twos & ~fours & ~eights & (ones | middle);
+        }
+
+        long result = 0;
+        for (int count = 0; count <= 8; count++) {
+            long alive = (-((birth >> count) & 1L) & ~middle) | (-((survival >> count) & 1L) & middle);
+            long matches = ((count & 1) != 0 ? ones : ~ones) & ((count & 2) != 0 ? twos : ~twos)
+                    & ((count & 4) != 0 ? fours : ~fours) & ((count & 8) != 0 ? eights : ~eights);
+            result |= alive & matches;
+        }
+        return result;
+    }
+
+    /* ********************** Threads ************************* */
+
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used per generation, 0 means one per available processor.
+     */
+    public void setThreads(int threads) {
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+        if (threads != this.threads) {
+            shutdownPool();
+            this.threads = threads;
+        }
+    }
+
+    private void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Stops the threads and releases the memory of the tiles. The engine can't be used afterwards.
+     */
+    @Override
+    public void dispose() {
+        shutdownPool();
+        tiles.clear();
+        storage.close();
+    }
+
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to, threshold;
+
+        private StepTask(int from, int to, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                stepTiles(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new StepTask(from, middle, threshold), new StepTask(middle, to, threshold));
+            }
+        }
+    }
+
+    /* ********************** Tiles ************************* */
+
+    private Tile newTile(long key) {
+        return new Tile(key, storage.allocate(), storage.allocate(), storage.allocate());
+    }
+
+    private void freeTile(Tile tile) {
+        storage.free(tile.rows);
+        storage.free(tile.previous);
+        storage.free(tile.next);
+    }
+
+    private Tile getTile(long tx, long ty) {
+        return tiles.get(tileKey(tx, ty));
+    }
+
+    private static boolean isChanged(Tile tile) {
+        return tile != null && tile.changed;
+    }
+
+    private static boolean isChangedTwo(Tile tile) {
+        return tile != null && tile.changedTwo;
+    }
+
+    static long tileKey(long tx, long ty) {
+        return (tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+    static long tileX(long key) {
+        return key >> 32;
+    }
+
+    static long tileY(long key) {
+        return (int) key;
+    }
+
+    /* ********************** Getters ************************* */
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * The number of tiles that actually had to be computed in the last generation.
+     */
+    public long getComputedTiles() {
+        return computedTiles;
+    }
+
+    @Override
+    public long getBirths() {
+        return births;
+    }
+
+    @Override
+    public long getDeaths() {
+        return deaths;
+    }
+
+    /**
+     * Keeping the hash makes computing a tile about twice as expensive, so it is only kept on request.
+     */
+    @Override
+    public boolean setHashing(boolean hashing) {
+        if (hashing && !this.hashing) {
+            this.hashing = true;
+            computeHash();
+        }
+        this.hashing = hashing;
+        return true;
+    }
+
+    @Override
+    public CellHash getHash() {
+        return hashing ? hash : null;
+    }
+
+    /**
+     * All cells of the computed tiles, the other tiles are only swapped or kept.
+     */
+
+    @Override
+    public long getEvaluatedCells() {
+        return computedTiles * TILE_SIZE * TILE_SIZE;
+    }
+
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    public boolean isOffHeap() {
+        return storage.isOffHeap();
+    }
+
+    /**
+     * The number of bytes reserved for the rows of the tiles, on or off the heap.
+     */
+    public long getAllocatedBytes() {
+        return storage.getAllocatedBytes();
+    }
+
+    /**
+     * Scratch arrays of one thread.
+     */
+    private static final class Buffers {
+        private final long[] leftColumn = new long[TILE_SIZE + 2];
+        private final long[] column = new long[TILE_SIZE + 2];
+        private final long[] rightColumn = new long[TILE_SIZE + 2];
+        private final long[] result = new long[TILE_SIZE];
+        private final long[] previous = new long[TILE_SIZE];
+    }
+
+    /**
+     * A tile with its current, previous and next generation. {@code changed} tells whether the current
+     * generation differs from the previous one, {@code changedTwo} whether it differs from the one before.
+     * A missing tile is empty and has not changed for at least two generations. {@code unknownHistory} marks
+     * tiles whose previous generation wasn't computed with the current rule, e.g. after setting the cells.
+     * The generations are slots of the {@link TileStorage}. {@code births} and {@code deaths} count the
+     * changes from the previous to the current generation, so swapping back reverses them. The same goes for
+     * the changes of the {@link CellHash}.
+     */
+    private static final class Tile {
+        private final long key;
+        private int rows, previous, next;
+        private long population, previousPopulation, nextPopulation;
+        private long columns, previousColumns, nextColumns;
+        private long births, deaths, nextBirths, nextDeaths;
+        private long hashChange, sumXChange, sumYChange, nextHashChange, nextSumXChange, nextSumYChange;
+        private final long hashOrigin;
+        private boolean changed, changedTwo;
+        private boolean nextChanged, nextChangedTwo;
+        private boolean unknownHistory;
+        private boolean touched;
+        private int action;
+
+        private Tile(long key, int rows, int previous, int next) {
+            this.key = key;
+            this.rows = rows;
+            this.previous = previous;
+            this.next = next;
+            hashOrigin = CellHash.multiply(CellHash.powerA(tileX(key) << TILE_SHIFT), CellHash.powerB(tileY(key) << TILE_SHIFT));
+        }
+
+        private void commit() {
+            if (action == SWAP) {
+                int rows = this.rows;
+                this.rows = previous;
+                previous = rows;
+
+                long population = this.population;
+                this.population = previousPopulation;
+                previousPopulation = population;
+
+                long columns = this.columns;
+                this.columns = previousColumns;
+                previousColumns = columns;
+
+                long births = this.births;
+                this.births = deaths;
+                deaths = births;
+                hashChange = CellHash.subtract(0, hashChange);
+                sumXChange = -sumXChange;
+                sumYChange = -sumYChange;
+            } else if (action == COMPUTE) {
+                int previous = this.previous;
+                this.previous = rows;
+                rows = next;
+                next = previous;
+
+                previousPopulation = population;
+                population = nextPopulation;
+                previousColumns = columns;
+                columns = nextColumns;
+
+                changed = nextChanged;
+                changedTwo = nextChangedTwo;
+                births = nextBirths;
+                deaths = nextDeaths;
+                hashChange = nextHashChange;
+                sumXChange = nextSumXChange;
+                sumYChange = nextSumYChange;
+                unknownHistory = false;
+            } else {
+                // Nothing around the tile changed, so the current generation is also the previous two
+                changed = false;
+                changedTwo = false;
+            }
+        }
+    }
+}
@@ -54,9 +54,9 @@ public class UndoManager {
 
     public void undo() {
         if (world.getState() == World.STOPPED) {
-            App.ui.getContentPane().getSelectionManager().finish();
+            if (App.ui != null) App.ui.getContentPane().getSelectionManager().finish();
             if (isUndoAvailable()) {
-                undoStages.get(undoIndex).getBefore().forEach(world::undoCell);
+                world.undoCells(undoStages.get(undoIndex).getBefore());
 
                 undoIndex--;
 
@@ -68,10 +68,10 @@ public class UndoManager {
 
     public void redo() {
         if (world.getState() == World.STOPPED) {
-            App.ui.getContentPane().getSelectionManager().cancel();
+            if (App.ui != null) App.ui.getContentPane().getSelectionManager().cancel();
             if (isRedoAvailable()) {
                 undoIndex++;
-                undoStages.get(undoIndex).getAfter().forEach(world::undoCell);
+                world.undoCells(undoStages.get(undoIndex).getAfter());
                 updateAvailability();
             }
         }
@@ -4,11 +4,18 @@ import de.julianhofmann.App;
 import de.julianhofmann.ui.ContentPane;
 import de.julianhofmann.ui.UI;
 import javafx.beans.property.*;
-import javafx.scene.Cursor;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -19,37 +26,72 @@ public class World {
     public static final int DEFAULT_CAMERA_X = 0;
     public static final int DEFAULT_CAMERA_Y = 0;
     public static final float DEFAULT_CELL_SIZE = 10, MIN_CELL_SIZE = 0.1f, MAX_CELL_SIZE = 300;
+    public static final int ENGINE_DEFAULT = 0;
+    public static final int ENGINE_HASHLIFE = 1;
+    public static final int ENGINE_TILED = 2;
+    public static final int MAX_HASHLIFE_STEP = 30;
+    private static final String RULE_PREFIX = "rule=";
+    private static final int SNAPSHOT_BUFFERS = 3;
 
     private final FloatProperty cameraX;
     private final FloatProperty cameraY;
     private final FloatProperty cellSize;
-    private final IntegerProperty state;
+    private final SimulationControl control = new SimulationControl();
+    private final SimulationMetrics metrics = new SimulationMetrics();
+    private long births, deaths;
+    private final PeriodDetector periodDetector = new PeriodDetector();
+    private final CellHash cellHash = new CellHash();
+    private boolean hashCells;
+    private volatile boolean cellHashOutdated = true;
+    private final ObjectProperty<Rule> rule;
     private final UndoManager undoManager;
-    private HashMap<Coordinates, Byte> cells;
-    private HashMap<Coordinates, Byte> updatedCells;
-    private HashMap<Coordinates, Byte> cache;
+    private CellSet cells;
+    private CellSet updatedCells;
+    private final CellSet checkedCells;
+    private CellSet cache;
+    private final Object engineLock = new Object();
+    private Engine engine;
+    private int engineType = ENGINE_DEFAULT;
+    private boolean engineLoaded;
+    // Counts the loads from the cache, a batch of the engine that was started before one is discarded
+    private long cacheLoads;
+    private long engineCacheLoads;
+    private volatile boolean cellsOutdated;
+    private volatile long generation;
+    private final AtomicReference<Snapshot> snapshot;
+    private final Queue<CellSet> snapshotBuffers = new ArrayBlockingQueue<>(SNAPSHOT_BUFFERS);
+    private final AtomicLong snapshotSequence = new AtomicLong();
+    // The snapshot that has the same cells as the cell set, or -1, and the last snapshot of the tiled engine
+    private volatile long cellsSequence = -1;
+    private TileIndex publishedTiles;
+    private long publishedTilesSequence;
+    private final GenerationDiff.Builder diff = new GenerationDiff.Builder();
+    private boolean recordDiff;
     private final ReentrantReadWriteLock cellsLock = new ReentrantReadWriteLock();
     private final Lock cellsReadLock = cellsLock.readLock();
     private final Lock cellsWriteLock = cellsLock.writeLock();
     private final StringProperty filePath = new SimpleStringProperty(null);
     private final BooleanProperty saved = new SimpleBooleanProperty(true);
+    // Counts the edits, so a save that was written in the background can tell whether it is still up to date
+    private volatile long edits;
 
     @SuppressWarnings("StatementWithEmptyBody")
     public World() {
-        cells = new HashMap<>();
-        updatedCells = new HashMap<>();
-        cache = new HashMap<>();
+        cells = new CellSet();
+        updatedCells = new CellSet();
+        checkedCells = new CellSet();
+        snapshot = new AtomicReference<>(new Snapshot(new CellSet(), null, null, 0, 0, snapshotBuffers));
         cameraX = new SimpleFloatProperty(DEFAULT_CAMERA_X);
         cameraY = new SimpleFloatProperty(DEFAULT_CAMERA_Y);
         cellSize = new SimpleFloatProperty(DEFAULT_CELL_SIZE);
-        state = new SimpleIntegerProperty(STOPPED);
+        rule = new SimpleObjectProperty<>(Rule.CONWAY);
         undoManager = new UndoManager(this);
 
         stateProperty().addListener((p, o, n) -> {
             if (n.intValue() == STOPPED && o.intValue() != STOPPED) {
-                updatedCells.clear();
                 loadFromCache();
             } else if (n.intValue() == PAUSED && o.intValue() != PAUSED) {
+                syncCells();
 
             } else if (n.intValue() == RUNNING && o.intValue() != RUNNING) {
 
@@ -60,100 +102,393 @@ public class World {
     /* ********************** Update ************************* */
 
     public void update() {
-        if (getState() == RUNNING) {
-            updatedCells = new HashMap<>(cells.size());
+        advance(1, Duration.ZERO);
+    }
+
+    /**
+     * Advances the world by up to {@code generations} generations back to back. The state and the
+     * time budget are only checked between generations, so at least one generation is computed
+     * as long as the world is running.
+     *
+     * @return the number of generations that were actually computed
+     */
+    public long advance(long generations, Duration budget) {
+        if (!control.isRunning() || generations <= 0) return 0;
+
+        long deadline = System.nanoTime() + budget.toNanos();
+        Rule rule = getRule();
+        int engineType = App.settings.getEngine();
+        if (isSupported(engineType, rule)) {
+            return advanceEngine(engineType, rule, generations, deadline);
+        }
+        syncCells();
+
+        long completed = 0;
+        GenerationDiff generationDiff = null;
+        cellsWriteLock.lock();
+        try {
+            // The changes are only needed if a single generation is published
+            long diffBase = cellsSequence;
+            recordDiff = diffBase >= 0;
+            diff.clear();
+            boolean detectPeriods = App.settings.isDetectPeriods() && periodDetector.getPeriod() == null;
+            long allocated = SimulationMetrics.allocatedBytes();
+            do {
+                long start = System.nanoTime();
+                // The hash is only kept up to date while the period detector asks for it
+                hashCells = !cellHashOutdated;
+                if (!computeGeneration(rule)) {
+                    // The hash already contains a part of the generation
+                    cellHashOutdated = true;
+                    break;
+                }
+                CellSet temp = cells;
+                cells = updatedCells;
+                updatedCells = temp;
+                completed++;
+                recordDiff = false;
+                metrics.record(1, System.nanoTime() - start, cells.size(), checkedCells.size(), births, deaths);
+                if (detectPeriods && periodDetector.observe(generation + completed, cells.size(), births, deaths)) {
+                    if (cellHashOutdated) {
+                        cellHash.compute(cells);
+                        cellHashOutdated = false;
+                    }
+                    checkPeriod(generation + completed, cellHash);
+                } else {
+                    cellHashOutdated = true;
+                }
+            } while (completed < generations && control.isRunning() && System.nanoTime() - deadline < 0);
+            if (completed > 0) metrics.recordAllocated(allocatedSince(allocated));
+            if (completed == 1 && diffBase >= 0) generationDiff = diff.build(diffBase);
+            // Stopping waits for the lock to load the cache, so the batch is published before
+            if (completed > 0) {
+                generation += completed;
+                publishCells(generationDiff);
+            }
+        } finally {
+            recordDiff = false;
+            cellsWriteLock.unlock();
+        }
+        if (completed > 0) invalidateEngine(false);
+        return completed;
+    }
+
+    /**
+     * Computes the next generation cell by cell into {@code updatedCells}.
+     *
+     * @return false if the world was stopped in the middle of the generation
+     */
+    private boolean computeGeneration(Rule rule) {
+        updatedCells.clear();
+        checkedCells.clear();
+        births = 0;
+        deaths = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (!control.isRunning()) return false;
+            int x = CellSet.x(cells.keyAt(slot));
+            int y = CellSet.y(cells.keyAt(slot));
+            if (cells.stateAt(slot) == 1) {
+                updateCell(x - 1, y - 1, rule);
+                updateCell(x, y - 1, rule);
+                updateCell(x + 1, y - 1, rule);
+
+                updateCell(x - 1, y, rule);
+                updateCell(x, y, rule);
+                updateCell(x + 1, y, rule);
+
+                updateCell(x - 1, y + 1, rule);
+                updateCell(x, y + 1, rule);
+                updateCell(x + 1, y + 1, rule);
+            } else if (cells.stateAt(slot) != 0) {
+                // Dying cells of Generations rules have no influence on their neighbors
+                updateCell(x, y, rule);
+            }
+        }
+        return true;
+    }
+
+    private void updateCell(int x, int y, Rule rule) {
+        long key = CellSet.key(x, y);
+        if (checkedCells.add(key, (byte) 1)) {
+            byte state = cells.get(key);
+            int neighborhood = isAlive(x - 1, y - 1) << 8 | isAlive(x, y - 1) << 7 | isAlive(x + 1, y - 1) << 6
+                    | isAlive(x - 1, y) << 5 | (state == 1 ? Rule.CENTER : 0) | isAlive(x + 1, y) << 3
+                    | isAlive(x - 1, y + 1) << 2 | isAlive(x, y + 1) << 1 | isAlive(x + 1, y + 1);
+
+            byte next = rule.next(state, neighborhood);
+            if (next != 0) {
+                updatedCells.set(key, next);
+            }
+            if (state != 1 && next == 1) {
+                births++;
+                if (recordDiff) diff.addBirth(key);
+            } else if (state == 1 && next != 1) {
+                deaths++;
+                if (recordDiff) diff.addDeath(key);
+            }
+            if (hashCells && state != next) {
+                if (state != 0) cellHash.remove(x, y, state);
+                if (next != 0) cellHash.add(x, y, next);
+            }
+        }
+    }
+
+    private int isAlive(int x, int y) {
+        return cells.get(x, y) == 1 ? 1 : 0;
+    }
+
+    /**
+     * HashLife can only simulate rules with two states and the bitboards only totalistic ones,
+     * all other rules are simulated cell by cell.
+     */
+    private static boolean isSupported(int engineType, Rule rule) {
+        if (engineType == ENGINE_HASHLIFE) return rule.getStates() == 2;
+        if (engineType == ENGINE_TILED) return rule.getStates() == 2 && rule.isTotalistic();
+        return false;
+    }
+
+    private long advanceEngine(int engineType, Rule rule, long generations, long deadline) {
+        synchronized (engineLock) {
+            if (!control.isRunning()) return 0;
+
+            if (engine == null || this.engineType != engineType || isOffHeapChanged()) {
+                syncCells();
+                if (engine != null) engine.dispose();
+                engine = createEngine(engineType);
+                this.engineType = engineType;
+                engineLoaded = false;
+            }
+
+            engine.setRule(rule);
+            if (!engineLoaded) {
+                cellsReadLock.lock();
+                try {
+                    engine.setCells(cells);
+                    engineCacheLoads = cacheLoads;
+                } finally {
+                    cellsReadLock.unlock();
+                }
+                engineLoaded = true;
+            }
+
+            if (engine instanceof TiledEngine) {
+                ((TiledEngine) engine).setThreads(App.settings.getThreads());
+            }
+
+            // HashLife may advance more than one generation per step, but never past the requested generations
+            int stepExponent = App.settings.getHashLifeStep();
+            boolean detectPeriods = App.settings.isDetectPeriods() && periodDetector.getPeriod() == null;
+            if (!detectPeriods) engine.setHashing(false);
+            cellHashOutdated = true;
+            long start = engine.getGeneration();
+            long allocated = SimulationMetrics.allocatedBytes();
+            do {
+                long stepGeneration = engine.getGeneration();
+                if (engine instanceof HashLife) {
+                    long remaining = generations - (stepGeneration - start);
+                    ((HashLife) engine).setStepExponent(Math.min(stepExponent, 63 - Long.numberOfLeadingZeros(remaining)));
+                }
+                long stepStart = System.nanoTime();
+                engine.step();
+                metrics.record(engine.getGeneration() - stepGeneration, System.nanoTime() - stepStart, engine.getPopulation(),
+                        engine.getEvaluatedCells(), engine.getBirths(), engine.getDeaths());
+                // Steps over more than one generation or without births and deaths can't be compared
+                if (detectPeriods && engine.getGeneration() - stepGeneration == 1 && engine.getBirths() >= 0) {
+                    long current = generation + engine.getGeneration() - start;
+                    if (periodDetector.observe(current, engine.getPopulation(), engine.getBirths(), engine.getDeaths())
+                            && engine.setHashing(true)) {
+                        checkPeriod(current, engine.getHash());
+                    } else {
+                        engine.setHashing(false);
+                    }
+                }
+            } while (engine.getGeneration() - start < generations && control.isRunning() && System.nanoTime() - deadline < 0);
+            metrics.recordAllocated(allocatedSince(allocated));
+            long completed = engine.getGeneration() - start;
+
+            // The engine doesn't hold the cells lock while it runs, so the world may have been stopped and
+            // loaded from the cache in the meantime
             cellsReadLock.lock();
             try {
-                cells.forEach((key, value) -> {
-                    if (getState() == RUNNING) {
-                        updateCell(key.getX(), key.getY());
-
-                        if (value == (byte) 1) {
-                            updateCell(key.getX() - 1, key.getY() - 1);
-                            updateCell(key.getX(), key.getY() - 1);
-                            updateCell(key.getX() + 1, key.getY() - 1);
-
-                            updateCell(key.getX() - 1, key.getY());
-                            updateCell(key.getX() + 1, key.getY());
-
-                            updateCell(key.getX() - 1, key.getY() + 1);
-                            updateCell(key.getX(), key.getY() + 1);
-                            updateCell(key.getX() + 1, key.getY() + 1);
-                        }
-                    }
-                });
+                if (engineCacheLoads != cacheLoads) {
+                    engineLoaded = false;
+                    return 0;
+                }
+                cellsOutdated = true;
+                generation += completed;
+
+                CellSet buffer = takeSnapshotBuffer();
+                engine.getCells(buffer);
+                long sequence = snapshotSequence.incrementAndGet();
+                if (engine instanceof TiledEngine) {
+                    // Comparing the tiles with the ones of the last snapshot is cheap, the renderer only redraws what changed
+                    TileIndex tiles = ((TiledEngine) engine).getTiles();
+                    publish(buffer, tiles, publishedTiles != null ? tiles.diff(publishedTiles, publishedTilesSequence) : null, sequence);
+                    publishedTiles = tiles;
+                    publishedTilesSequence = sequence;
+                } else {
+                    publish(buffer, null, null, sequence);
+                    publishedTiles = null;
+                }
             } finally {
                 cellsReadLock.unlock();
             }
-            if (getState() == RUNNING) {
-                cells = updatedCells;
-            } else {
-                updatedCells.clear();
-            }
+            return completed;
         }
     }
 
-    public void updateCell(float x, float y) {
-        Coordinates key = new Coordinates(x, y);
-        if (!updatedCells.containsKey(key)) {
-            int neighborSum = getCell(x - 1, y - 1) + getCell(x, y - 1) + getCell(x + 1, y - 1)
-                    + getCell(x - 1, y) + getCell(x + 1, y)
-                    + getCell(x - 1, y + 1) + getCell(x, y + 1) + getCell(x + 1, y + 1);
+    private void checkPeriod(long generation, CellHash hash) {
+        PeriodDetector.Period period = periodDetector.check(generation, hash);
+        if (period != null) {
+            control.setPeriod(period);
+            if (App.settings.isPauseOnPeriod()) control.setState(PAUSED);
+        }
+    }
 
-            if (neighborSum == 3 || (neighborSum == 2 && cells.getOrDefault(key, (byte) 0) == 1)) {
-                updatedCells.put(key, (byte) 1);
-            } else {
-                updatedCells.put(key, (byte) 0);
+    private static long allocatedSince(long allocated) {
+        return allocated < 0 ? -1 : SimulationMetrics.allocatedBytes() - allocated;
+    }
+
+    private static Engine createEngine(int engineType) {
+        if (engineType == ENGINE_HASHLIFE) {
+            return new HashLife();
+        }
+        return new TiledEngine(App.settings.isOffHeap());
+    }
+
+    private boolean isOffHeapChanged() {
+        return engine instanceof TiledEngine && ((TiledEngine) engine).isOffHeap() != App.settings.isOffHeap();
+    }
+
+    /**
+     * Copies the current generation of the engine into the cell set. The conversion only happens
+     * when someone actually reads the cells, not after every generation.
+     * Must not be called while holding the cells lock.
+     */
+    public void syncCells() {
+        if (cellsOutdated) {
+            synchronized (engineLock) {
+                if (cellsOutdated) {
+                    cellsWriteLock.lock();
+                    try {
+                        engine.getCells(cells);
+                        cellsSequence = -1;
+                    } finally {
+                        cellsWriteLock.unlock();
+                    }
+                    cellsOutdated = false;
+                }
             }
+        }
+    }
 
+    /**
+     * Has to be called after every change to the cell map that was not made by the engine.
+     * Must not be called while holding the cells lock.
+     */
+    private void invalidateEngine() {
+        invalidateEngine(true);
+    }
 
-            if (neighborSum == 0) {
-                updatedCells.remove(key);
+    /**
+     * @param edited false if the cells have only been advanced by the simulation, so the period detection can go on
+     */
+    private void invalidateEngine(boolean edited) {
+        synchronized (engineLock) {
+            engineLoaded = false;
+            cellsOutdated = false;
+            if (edited) {
+                cellsSequence = -1;
+                cellHashOutdated = true;
+                periodDetector.reset();
+                control.setPeriod(null);
             }
         }
+        // The simulation publishes its generations itself, edits are published right away so readers never have to
+        if (edited) publishCells(null);
+    }
+
+    /* ********************** Snapshots ************************* */
+
+    /**
+     * Returns the latest generation without ever waiting for the simulation.
+     * {@link Snapshot#release()} has to be called when the snapshot isn't needed anymore.
+     */
+    public Snapshot acquireSnapshot() {
+        while (true) {
+            Snapshot snapshot = this.snapshot.get();
+            if (snapshot.retain()) return snapshot;
+        }
+    }
+
+    /**
+     * @param diff the changes since the last snapshot of the cell set, if they are known
+     */
+    private void publishCells(GenerationDiff diff) {
+        CellSet buffer = takeSnapshotBuffer();
+        cellsReadLock.lock();
+        try {
+            buffer.copyFrom(cells);
+            long sequence = snapshotSequence.incrementAndGet();
+            cellsSequence = sequence;
+            publish(buffer, null, diff, sequence);
+        } finally {
+            cellsReadLock.unlock();
+        }
+    }
+
+    private CellSet takeSnapshotBuffer() {
+        CellSet buffer = snapshotBuffers.poll();
+        return buffer != null ? buffer : new CellSet();
+    }
+
+    /**
+     * @param index the index of the cells if the engine could provide it cheaply, otherwise it is built when it is needed
+     * @param diff  the changes since an earlier snapshot or null
+     */
+    private void publish(CellSet buffer, TileIndex index, GenerationDiff diff, long sequence) {
+        snapshot.getAndSet(new Snapshot(buffer, index, diff, sequence, generation, snapshotBuffers)).release();
+        control.setGeneration(generation, buffer.size());
     }
 
     /* ********************** Cache ************************* */
 
+    /**
+     * Remembers the cells the simulation is started with. The cache shares the arrays of the cells until the
+     * simulation modifies them, so starting takes constant time however many cells there are.
+     */
     public void storeInCache() {
-        App.ui.setCursor(Cursor.WAIT);
+        syncCells();
         cellsReadLock.lock();
         try {
-            cells.forEach((key, value) -> {
-                if (value == 1) {
-                    cache.put(key, value);
-                }
-            });
+            cache = cells.share();
         } finally {
             cellsReadLock.unlock();
         }
-        App.ui.removeCursor(Cursor.WAIT);
     }
 
     public void loadFromCache() {
-        if (cache != null && cache.size() > 0) {
-            cellsWriteLock.lock();
-            try {
-                HashMap<Coordinates, Byte> temp;
-                temp = cells;
-                cells = cache;
-                cache = temp;
-                cache.clear();
-            } finally {
-                cellsWriteLock.unlock();
-            }
+        cellsWriteLock.lock();
+        try {
+            if (cache != null && !cache.isEmpty()) cells = cache;
+            generation = 0;
+            cacheLoads++;
+        } finally {
+            cellsWriteLock.unlock();
         }
+        cache = null;
+        invalidateEngine();
     }
 
     public void clearCache() {
-        cache.clear();
+        cache = null;
     }
 
     /* ********************** Loading/Saving ********************* */
 
 
     public void newFile() {
-        if (App.ui.checkChanges()) {
+        if (App.ui == null || App.ui.checkChanges()) {
             cellsWriteLock.lock();
             try {
                 setCellSize(DEFAULT_CELL_SIZE);
@@ -164,117 +499,204 @@ public class World {
                 filePath.set(null);
                 cells.clear();
                 updatedCells.clear();
+                rule.set(Rule.CONWAY);
                 setSaved(true);
             } finally {
                 cellsWriteLock.unlock();
             }
+            generation = 0;
+            invalidateEngine();
         }
     }
 
     public boolean load(String path) {
         if (path == null) return false;
 
-        HashMap<Coordinates, Byte> cells = new HashMap<>();
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
-            setCellSize(Float.parseFloat(reader.readLine()));
-            setCameraX(Float.parseFloat(reader.readLine()));
-            setCameraY(Float.parseFloat(reader.readLine()));
+            load(path, read(path));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Stops the world first, a running world would ignore the cells but take the rest of the file.
+     */
+    public void load(String path, WorldFile file) {
+        setState(STOPPED);
+        setCellSize(file.cellSize);
+        setCameraX(file.cameraX);
+        setCameraY(file.cameraY);
+        this.rule.set(file.rule);
+        setCells(file.cells);
+        filePath.set(path);
+        saved.set(true);
+    }
+
+    /**
+     * Reads a world file without changing the world, so it can be called from any thread.
+     * Stops with an {@link InterruptedIOException} if the thread is interrupted.
+     *
+     * @throws IllegalArgumentException if the file contains an invalid rule
+     */
+    public static WorldFile read(String path) throws IOException {
+        CellSet cells = new CellSet();
+        Rule rule = Rule.CONWAY;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            float cellSize = Float.parseFloat(reader.readLine());
+            float cameraX = Float.parseFloat(reader.readLine());
+            float cameraY = Float.parseFloat(reader.readLine());
             String line = reader.readLine();
             while (line != null) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
                 String[] temp = line.split("/");
-                if (temp.length == 2) {
-                    cells.put(new Coordinates(Float.parseFloat(temp[0]), Float.parseFloat(temp[1])), (byte) 1);
+                if (line.startsWith(RULE_PREFIX)) {
+                    rule = Rule.parse(line.substring(RULE_PREFIX.length()));
+                } else if (temp.length == 2) {
+                    cells.set((int) Float.parseFloat(temp[0]), (int) Float.parseFloat(temp[1]), (byte) 1);
+                } else if (temp.length == 3) {
+                    cells.set((int) Float.parseFloat(temp[0]), (int) Float.parseFloat(temp[1]), Byte.parseByte(temp[2]));
                 } else {
                     System.err.println("Invalid line: " + line);
                 }
                 line = reader.readLine();
             }
-            reader.close();
-            setCells(cells);
-            filePath.set(path);
-            saved.set(true);
-            return true;
-        } catch (IOException | NumberFormatException e) {
-            e.printStackTrace();
+            return new WorldFile(cellSize, cameraX, cameraY, rule, cells);
+        } catch (NullPointerException e) {
+            throw new EOFException("Missing header in " + path);
         }
-        return false;
     }
 
-
-    @SuppressWarnings({"BooleanMethodIsAlwaysInverted", "ResultOfMethodCallIgnored"})
     public boolean save(String path) {
         if (path == null) return false;
 
+        long edits = getEdits();
+        Snapshot snapshot = acquireSnapshot();
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(path));
-            writer.write(getCellSize()+"\n");
-            writer.write(getCameraX()+"\n");
-            writer.write(getCameraY()+"\n");
-            cellsReadLock.lock();
-            try {
-                cells.forEach((key, value) -> {
-                    if (value != 0) {
-                        try {
-                            writer.write(key.getX() + "/" + key.getY() + "\n");
-                        } catch (IOException e) {
-                            try {
-                                writer.close();
-                                File file = new File(path);
-                                if (file.exists()) file.delete();
-                            } catch (IOException ioException) {
-                                ioException.printStackTrace();
-                            }
-                            e.printStackTrace();
-                        }
+            if (!write(path, toWorldFile(snapshot))) return false;
+        } finally {
+            snapshot.release();
+        }
+        markSaved(path, edits);
+        return true;
+    }
+
+    /**
+     * The current view and rule together with the cells of {@code snapshot}, which must not be released
+     * before the file has been written.
+     */
+    public WorldFile toWorldFile(Snapshot snapshot) {
+        return new WorldFile(getCellSize(), getCameraX(), getCameraY(), getRule(), snapshot.getCells());
+    }
+
+    /**
+     * Writes a world file without touching the world, so it can be called from any thread. The file is
+     * written next to the target first and only replaces it when complete, so an interrupted or failed
+     * save never leaves a broken file behind. Writes to files are serialized.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static synchronized boolean write(String path, WorldFile file) {
+        File temp = new File(path + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+                writer.write(file.cellSize + "\n");
+                writer.write(file.cameraX + "\n");
+                writer.write(file.cameraY + "\n");
+                writer.write(RULE_PREFIX + file.rule + "\n");
+                CellSet cells = file.cells;
+                for (int slot = 0; slot < cells.capacity(); slot++) {
+                    if (cells.stateAt(slot) == 1) {
+                        long key = cells.keyAt(slot);
+                        writer.write((float) CellSet.x(key) + "/" + (float) CellSet.y(key) + "\n");
+                    } else if (cells.stateAt(slot) != 0) {
+                        long key = cells.keyAt(slot);
+                        writer.write((float) CellSet.x(key) + "/" + (float) CellSet.y(key) + "/" + cells.stateAt(slot) + "\n");
                     }
-                });
-            } finally {
-                cellsReadLock.unlock();
+                    if ((slot & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                }
             }
-            File file = new File(path);
-            if (getFilePath() == null && file.exists()) filePath.set(file.getPath());
-            writer.flush();
-            writer.close();
-            saved.set(file.exists());
-            return file.exists();
+            Files.move(temp.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            if (!(e instanceof InterruptedIOException)) e.printStackTrace();
+            temp.delete();
         }
         return false;
     }
 
+    /**
+     * @param edits the {@link #getEdits() edits} when the saved snapshot was taken, later edits stay unsaved
+     */
+    public void markSaved(String path, long edits) {
+        if (getFilePath() == null) filePath.set(new File(path).getPath());
+        if (edits == this.edits) saved.set(true);
+    }
+
     public void updatePosition() {
         if (getFilePath() != null) {
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(getFilePath()));
-                ArrayList<String> lines = new ArrayList<>();
-                String line = reader.readLine();
-                while (line != null) {
-                    lines.add(line);
-                    line = reader.readLine();
-                }
-                reader.close();
+            updatePosition(getFilePath(), getCellSize(), getCameraX(), getCameraY());
+        }
+    }
+
+    /**
+     * Replaces the header of a saved world file with the given view without changing the cells.
+     */
+    public static synchronized void updatePosition(String path, float cellSize, float cameraX, float cameraY) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(path));
+            ArrayList<String> lines = new ArrayList<>();
+            String line = reader.readLine();
+            while (line != null) {
+                lines.add(line);
+                line = reader.readLine();
+            }
+            reader.close();
 
-                String cellSize = Float.toString(getCellSize());
-                String cameraX = Float.toString(getCameraX());
-                String cameraY = Float.toString(getCameraY());
+            String cellSizeLine = Float.toString(cellSize);
+            String cameraXLine = Float.toString(cameraX);
+            String cameraYLine = Float.toString(cameraY);
 
-                if (!cellSize.equals(lines.get(0)) || !cameraX.equals(lines.get(1)) || !cameraY.equals(lines.get(2))) {
-                    lines.set(0, cellSize);
-                    lines.set(1, cameraX);
-                    lines.set(2, cameraY);
+            if (!cellSizeLine.equals(lines.get(0)) || !cameraXLine.equals(lines.get(1)) || !cameraYLine.equals(lines.get(2))) {
+                lines.set(0, cellSizeLine);
+                lines.set(1, cameraXLine);
+                lines.set(2, cameraYLine);
 
-                    BufferedWriter writer = new BufferedWriter(new FileWriter(getFilePath()));
-                    for (String l : lines) {
-                        writer.write(l + "\n");
-                    }
-                    writer.flush();
-                    writer.close();
+                BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+                for (String l : lines) {
+                    writer.write(l + "\n");
                 }
-            } catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                e.printStackTrace();
+                writer.flush();
+                writer.close();
             }
+        } catch (IOException | NumberFormatException | IndexOutOfBoundsException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The content of a world file.
+     */
+    public static final class WorldFile {
+        private final float cellSize, cameraX, cameraY;
+        private final Rule rule;
+        private final CellSet cells;
+
+        private WorldFile(float cellSize, float cameraX, float cameraY, Rule rule, CellSet cells) {
+            this.cellSize = cellSize;
+            this.cameraX = cameraX;
+            this.cameraY = cameraY;
+            this.rule = rule;
+            this.cells = cells;
+        }
+
+        public CellSet getCells() {
+            return cells;
+        }
+
+        public Rule getRule() {
+            return rule;
         }
     }
 
@@ -282,9 +704,11 @@ public class World {
 
     /* ---------------------- Cells ------------------------ */
 
-    public void setCells(HashMap<Coordinates, Byte> cells) {
+    public void setCells(CellSet cells) {
         if (getState() != RUNNING) {
             this.cells = cells;
+            generation = 0;
+            invalidateEngine();
             clearCache();
             undoManager.clear();
         }
@@ -292,7 +716,14 @@ public class World {
 
     public void setCells(Coordinates coordinates, HashMap<Coordinates, Byte> cells) {
         if (getState() != RUNNING) {
-            cells.forEach((key, value) -> setCell(coordinates.getX() + key.getX(),coordinates.getY() + key.getY(), value));
+            // Every edit publishes a snapshot, so all cells are set at once
+            cellsWriteLock.lock();
+            try {
+                cells.forEach((key, value) -> putCell(new Coordinates(coordinates.getX() + key.getX(), coordinates.getY() + key.getY()), value));
+            } finally {
+                cellsWriteLock.unlock();
+            }
+            invalidateEngine();
         }
     }
 
@@ -300,16 +731,26 @@ public class World {
         if (getState() != RUNNING) {
             cellsWriteLock.lock();
             try {
-                undoManager.addChange(getCell(coordinates), value, coordinates);
-                cells.put(coordinates, value);
-                if (getState() == STOPPED) {
-                    saved.set(false);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+                putCell(coordinates, value);
             } finally {
                 cellsWriteLock.unlock();
             }
+            invalidateEngine();
+        }
+    }
+
+    /**
+     * Must be called while holding the cells write lock.
+     */
+    private void putCell(Coordinates coordinates, byte value) {
+        try {
+            undoManager.addChange(getCell(coordinates), value, coordinates);
+            cells.set((int) coordinates.getX(), (int) coordinates.getY(), value);
+            if (getState() == STOPPED) {
+                setSaved(false);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
@@ -317,19 +758,20 @@ public class World {
         setCell(new Coordinates(x, y), value);
     }
 
-    public void undoCell(Coordinates coordinates, byte value) {
+    public void undoCells(HashMap<Coordinates, Byte> cells) {
         if (getState() != RUNNING) {
             cellsWriteLock.lock();
             try {
-                cells.put(coordinates, value);
+                cells.forEach((coordinates, value) -> this.cells.set((int) coordinates.getX(), (int) coordinates.getY(), value));
                 if (getState() == STOPPED) {
-                    saved.set(false);
+                    setSaved(false);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
                 cellsWriteLock.unlock();
             }
+            invalidateEngine();
         }
     }
 
@@ -391,6 +833,31 @@ public class World {
         }
     }
 
+    /**
+     * Cells with a state the new rule does not have are removed.
+     */
+    public void setRule(Rule rule) {
+        if (getState() == STOPPED && !rule.equals(getRule())) {
+            syncCells();
+            cellsWriteLock.lock();
+            try {
+                ArrayList<Long> invalidCells = new ArrayList<>();
+                for (int slot = 0; slot < cells.capacity(); slot++) {
+                    if (cells.stateAt(slot) >= rule.getStates()) {
+                        invalidCells.add(cells.keyAt(slot));
+                    }
+                }
+                invalidCells.forEach(cells::remove);
+                undoManager.clear();
+                this.rule.set(rule);
+                setSaved(false);
+            } finally {
+                cellsWriteLock.unlock();
+            }
+            invalidateEngine();
+        }
+    }
+
     /* ---------------------- Other ------------------------ */
 
     public void setCameraX(float cameraX) {
@@ -467,15 +934,17 @@ public class World {
 
     public void setState(int state) {
         if (state == World.RUNNING) {
-            App.ui.getContentPane().getSelectionManager().finish();
-            if (this.state.get() != PAUSED) {
+            if (App.ui != null) App.ui.getContentPane().getSelectionManager().finish();
+            if (getState() == STOPPED) {
                 storeInCache();
+                metrics.reset();
             }
         }
-        this.state.set(state);
+        control.setState(state);
     }
 
     public void setSaved(boolean saved) {
+        if (!saved) edits++;
         this.saved.set(saved);
     }
 
@@ -483,16 +952,19 @@ public class World {
 
     /* ---------------------- Cells ------------------------ */
 
-    public HashMap<Coordinates, Byte> getCells() {
+    /**
+     * Call {@link #syncCells()} first and hold the cells read lock while reading the returned set.
+     */
+    public CellSet getCells() {
         return cells;
     }
 
     public byte getCell(Coordinates coordinates) {
-        return cells.getOrDefault(coordinates, (byte) 0);
+        return cells.get((int) coordinates.getX(), (int) coordinates.getY());
     }
 
     public byte getCell(float x, float y) {
-        return cells.getOrDefault(new Coordinates(x, y), (byte) 0);
+        return cells.get((int) x, (int) y);
     }
 
     public HashMap<Coordinates, Byte> getCellsInRect(Coordinates start, Coordinates end) {
@@ -538,18 +1010,44 @@ public class World {
         return cellSize;
     }
 
+    public Rule getRule() {
+        return rule.get();
+    }
+
+    public ObjectProperty<Rule> ruleProperty() {
+        return rule;
+    }
+
     public int getState() {
-        return state.get();
+        return control.getState();
     }
 
-    public IntegerProperty stateProperty() {
-        return state;
+    /**
+     * Follows the state on the FX thread, use {@link #getState()} from other threads.
+     */
+    public ReadOnlyIntegerProperty stateProperty() {
+        return control.stateProperty();
+    }
+
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SimulationControl getControl() {
+        return control;
     }
 
     public UndoManager getUndoManager() {
         return undoManager;
     }
 
+    /**
+     * The number of generations since the simulation was started.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     public Lock getCellsReadLock() {
         return cellsReadLock;
     }
@@ -563,6 +1061,10 @@ public class World {
     }
 
 
+    public long getEdits() {
+        return edits;
+    }
+
     public boolean isSaved() {
         return saved.get();
     }
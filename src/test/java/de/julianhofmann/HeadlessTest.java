@@ -0,0 +1,63 @@
+package de.julianhofmann;
+
+import de.julianhofmann.util.Settings;
+import de.julianhofmann.world.CellSet;
+import de.julianhofmann.world.Snapshot;
+import de.julianhofmann.world.World;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * All engines have to stop at exactly the requested generation, also if HashLife can't get there in one jump.
+ */
+public class HeadlessTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createSettings() {
+        App.settings = new Settings();
+        App.settings.setHashLifeStep(3);
+    }
+
+    @Test
+    public void enginesStopAtTheSameGeneration() throws IOException {
+        File in = folder.newFile("soup.gol");
+        App.world = new World();
+        Random random = new Random(3);
+        for (int i = 0; i < 800; i++) App.world.setCell(random.nextInt(40), random.nextInt(40), (byte) 1);
+        Snapshot snapshot = App.world.acquireSnapshot();
+        assertTrue(World.write(in.getPath(), App.world.toWorldFile(snapshot)));
+        snapshot.release();
+
+        for (long generations : new long[]{3, 7, 1001}) {
+            Set<Long> expected = simulate(in, "default", generations);
+            assertEquals("hashlife, " + generations + " generations", expected, simulate(in, "hashlife", generations));
+            assertEquals("tiled, " + generations + " generations", expected, simulate(in, "tiled", generations));
+        }
+    }
+
+    private Set<Long> simulate(File in, String engine, long generations) throws IOException {
+        File out = new File(folder.getRoot(), engine + "-" + generations + ".gol");
+        App.world = new World();
+        assertEquals(0, Headless.run(new String[]{Headless.FLAG, in.getPath(), "--generations", Long.toString(generations),
+                "--engine", engine, "--out", out.getPath()}));
+        CellSet cells = World.read(out.getPath()).getCells();
+        Set<Long> live = new HashSet<>();
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) live.add(cells.keyAt(slot));
+        }
+        return live;
+    }
+}
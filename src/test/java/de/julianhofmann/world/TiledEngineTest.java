@@ -0,0 +1,164 @@
+package de.julianhofmann.world;
+
+import de.julianhofmann.App;
+import de.julianhofmann.util.Settings;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the bitboard engine with the simulation cell by cell, especially for cells that die,
+ * as tiles that only swap between their last two generations could bring them back.
+ */
+public class TiledEngineTest {
+    private static final int GENERATIONS = 40;
+
+    @BeforeClass
+    public static void createSettings() {
+        App.settings = new Settings();
+    }
+
+    @Test
+    public void loneCellNextToBlockDies() {
+        CellSet cells = cells(0, 0, 1, 0, 0, 1, 1, 1, 300, 300);
+        assertSameGenerations(cells, Rule.CONWAY);
+    }
+
+    @Test
+    public void cellsDieInOtherTiles() {
+        // A blinker, a block and single cells in the tiles around them
+        CellSet cells = cells(10, 10, 11, 10, 12, 10, 40, 40, 41, 40, 40, 41, 41, 41,
+                63, 63, 64, 64, -1, 5, 130, -70, -200, 200);
+        assertSameGenerations(cells, Rule.CONWAY);
+    }
+
+    @Test
+    public void soup() {
+        Random random = new Random(5);
+        CellSet cells = new CellSet();
+        for (int i = 0; i < 3000; i++) cells.set(random.nextInt(150) - 75, random.nextInt(150) - 75, (byte) 1);
+        assertSameGenerations(cells, Rule.CONWAY);
+    }
+
+    @Test
+    public void ruleChange() {
+        TiledEngine engine = new TiledEngine(false);
+        engine.setRule(Rule.CONWAY);
+        engine.setCells(cells(21, 20, 20, 21, 21, 21, 21, 22));
+        engine.step();
+
+        // The second generation of the new rule equals the one before the change, which must not make the tile swap
+        Rule rule = Rule.parse("B58/S14568");
+        CellSet current = new CellSet();
+        engine.getCells(current);
+        engine.setRule(rule);
+        assertSameGenerations(engine, current, rule);
+        engine.dispose();
+    }
+
+    @Test
+    public void emptyTilesAreFreed() {
+        TiledEngine engine = new TiledEngine(false);
+        engine.setRule(Rule.CONWAY);
+        engine.setCells(cells(10, 10, 11, 10, 10, 11, 11, 11, 300, 300));
+        for (int i = 0; i < GENERATIONS; i++) engine.step();
+        assertEquals(4, engine.getPopulation());
+        assertEquals(1, engine.getTileCount());
+        engine.dispose();
+    }
+
+    @Test
+    public void parallelStepsMatchOneThread() {
+        Random random = new Random(11);
+        CellSet cells = new CellSet();
+        for (int i = 0; i < 60000; i++) cells.set(random.nextInt(400), random.nextInt(400), (byte) 1);
+
+        TiledEngine single = new TiledEngine(false);
+        TiledEngine parallel = new TiledEngine(false);
+        single.setThreads(1);
+        parallel.setThreads(4);
+        for (TiledEngine engine : new TiledEngine[]{single, parallel}) {
+            engine.setRule(Rule.CONWAY);
+            engine.setCells(cells);
+        }
+        for (int generation = 1; generation <= 300; generation++) {
+            single.step();
+            parallel.step();
+            assertEquals("generation " + generation, single.getPopulation(), parallel.getPopulation());
+        }
+        CellSet expected = new CellSet();
+        CellSet actual = new CellSet();
+        single.getCells(expected);
+        parallel.getCells(actual);
+        assertEquals(live(expected), live(actual));
+        single.dispose();
+        parallel.dispose();
+    }
+
+    private static void assertSameGenerations(CellSet cells, Rule rule) {
+        TiledEngine engine = new TiledEngine(false);
+        engine.setRule(rule);
+        engine.setCells(cells);
+        assertSameGenerations(engine, cells, rule);
+        engine.dispose();
+    }
+
+    /**
+     * Steps the engine, which is at {@code cells}, and compares every generation with the simulation.
+     */
+    private static void assertSameGenerations(TiledEngine engine, CellSet cells, Rule rule) {
+        CellSet[] expected = simulateCellByCell(cells, rule);
+        for (int generation = 1; generation <= GENERATIONS; generation++) {
+            engine.step();
+            CellSet actual = new CellSet();
+            engine.getCells(actual);
+            assertEquals("generation " + generation, live(expected[generation]), live(actual));
+        }
+    }
+
+    /**
+     * Every generation, one at a time, the first one is the given cells.
+     */
+    private static CellSet[] simulateCellByCell(CellSet cells, Rule rule) {
+        App.settings.setEngine(World.ENGINE_DEFAULT);
+        App.settings.setDetectPeriods(false);
+        World world = new World();
+        world.setRule(rule);
+        CellSet copy = new CellSet();
+        copy.copyFrom(cells);
+        world.setCells(copy);
+        world.getControl().setState(World.RUNNING);
+
+        CellSet[] generations = new CellSet[GENERATIONS + 1];
+        generations[0] = copy;
+        for (int generation = 1; generation <= GENERATIONS; generation++) {
+            assertEquals(1, world.advance(1, Duration.ofSeconds(10)));
+            Snapshot snapshot = world.acquireSnapshot();
+            generations[generation] = new CellSet();
+            generations[generation].copyFrom(snapshot.getCells());
+            snapshot.release();
+        }
+        world.getControl().setState(World.STOPPED);
+        return generations;
+    }
+
+    private static CellSet cells(int... coordinates) {
+        CellSet cells = new CellSet();
+        for (int i = 0; i < coordinates.length; i += 2) cells.set(coordinates[i], coordinates[i + 1], (byte) 1);
+        return cells;
+    }
+
+    private static Set<Long> live(CellSet cells) {
+        Set<Long> live = new HashSet<>();
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (cells.stateAt(slot) == 1) live.add(cells.keyAt(slot));
+        }
+        return live;
+    }
+}
@@ -0,0 +1,109 @@
+package de.julianhofmann.world;
+
+import de.julianhofmann.App;
+import de.julianhofmann.util.Settings;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The snapshots have to show the latest generation or edit without readers publishing them, and saving or
+ * opening a file must not lose edits or mix two worlds.
+ */
+public class WorldTest {
+
+    @BeforeClass
+    public static void createSettings() {
+        App.settings = new Settings();
+        App.settings.setDetectPeriods(false);
+    }
+
+    @Test
+    public void editsArePublished() {
+        App.settings.setEngine(World.ENGINE_DEFAULT);
+        World world = new World();
+        Snapshot before = world.acquireSnapshot();
+        before.release();
+
+        world.setCell(3, 4, (byte) 1);
+        Snapshot snapshot = world.acquireSnapshot();
+        assertEquals(1, snapshot.getPopulation());
+        assertEquals(1, snapshot.getCells().get(3, 4));
+        assertEquals(before.getSequence() + 1, snapshot.getSequence());
+        snapshot.release();
+
+        // Reading again doesn't publish anything
+        snapshot = world.acquireSnapshot();
+        assertEquals(before.getSequence() + 1, snapshot.getSequence());
+        snapshot.release();
+    }
+
+    @Test
+    public void generationsOfTheEngineArePublished() {
+        App.settings.setEngine(World.ENGINE_TILED);
+        World world = new World();
+        CellSet cells = new CellSet();
+        // A block and a cell that dies
+        cells.set(10, 10, (byte) 1);
+        cells.set(11, 10, (byte) 1);
+        cells.set(10, 11, (byte) 1);
+        cells.set(11, 11, (byte) 1);
+        cells.set(300, 300, (byte) 1);
+        world.setCells(cells);
+        world.getControl().setState(World.RUNNING);
+
+        for (int generation = 1; generation <= 3; generation++) {
+            assertEquals(1, world.advance(1, Duration.ofSeconds(10)));
+            Snapshot snapshot = world.acquireSnapshot();
+            assertEquals(generation, snapshot.getGeneration());
+            assertEquals(4, snapshot.getPopulation());
+            snapshot.release();
+        }
+        world.getControl().setState(World.STOPPED);
+    }
+
+    @Test
+    public void editsDuringSaveStayUnsaved() {
+        App.settings.setEngine(World.ENGINE_DEFAULT);
+        World world = new World();
+        world.setCell(1, 1, (byte) 1);
+        long edits = world.getEdits();
+
+        // Edited while the file was written in the background
+        world.setCell(2, 2, (byte) 1);
+        world.markSaved("test.gol", edits);
+        assertFalse(world.isSaved());
+
+        world.markSaved("test.gol", world.getEdits());
+        assertTrue(world.isSaved());
+    }
+
+    @Test
+    public void loadStopsTheWorld() throws IOException {
+        App.settings.setEngine(World.ENGINE_DEFAULT);
+        File file = File.createTempFile("world", ".gol");
+        file.deleteOnExit();
+        World saved = new World();
+        saved.setRule(Rule.parse("B36/S23"));
+        saved.setCell(5, 5, (byte) 1);
+        Snapshot snapshot = saved.acquireSnapshot();
+        assertTrue(World.write(file.getPath(), saved.toWorldFile(snapshot)));
+        snapshot.release();
+
+        World world = new World();
+        world.setCell(1, 1, (byte) 1);
+        world.getControl().setState(World.RUNNING);
+        world.load(file.getPath(), World.read(file.getPath()));
+        assertEquals(World.STOPPED, world.getState());
+        assertEquals(Rule.parse("B36/S23"), world.getRule());
+        assertEquals(1, world.getCell(5, 5));
+        assertEquals(0, world.getCell(1, 1));
+    }
+}
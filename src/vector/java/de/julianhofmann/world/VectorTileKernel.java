@@ -0,0 +1,70 @@
+package de.julianhofmann.world;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static de.julianhofmann.world.TiledEngine.TILE_SIZE;
+
+/**
+ * Same computation as {@link TiledEngine#nextRow}, but on as many rows at once as the CPU has long lanes.
+ * Only Conway's rule is vectorized, other rules are computed by {@link ScalarTileKernel}.
+ * Only compiled with the maven profile "vector" and needs {@code --add-modules jdk.incubator.vector} at runtime.
+ */
+class VectorTileKernel implements TileKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final TileKernel SCALAR = new ScalarTileKernel();
+
+    @Override
+    public void step(long[] leftColumn, long[] column, long[] rightColumn, long[] result, int birth, int survival) {
+        if (birth != TiledEngine.CONWAY_BIRTH || survival != TiledEngine.CONWAY_SURVIVAL) {
+            // Other rules need a loop over all neighbor counts, which C2 only compiles with boxed vectors
+            SCALAR.step(leftColumn, column, rightColumn, result, birth, survival);
+            return;
+        }
+        int row = 0;
+        for (; row + SPECIES.length() <= TILE_SIZE; row += SPECIES.length()) {
+            LongVector above = LongVector.fromArray(SPECIES, column, row);
+            LongVector middle = LongVector.fromArray(SPECIES, column, row + 1);
+            LongVector below = LongVector.fromArray(SPECIES, column, row + 2);
+
+            LongVector aboveLeft = LongVector.fromArray(SPECIES, leftColumn, row);
+            LongVector aboveRight = LongVector.fromArray(SPECIES, rightColumn, row);
+            LongVector middleLeft = LongVector.fromArray(SPECIES, leftColumn, row + 1);
+            LongVector middleRight = LongVector.fromArray(SPECIES, rightColumn, row + 1);
+            LongVector belowLeft = LongVector.fromArray(SPECIES, leftColumn, row + 2);
+            LongVector belowRight = LongVector.fromArray(SPECIES, rightColumn, row + 2);
+
+            // Sum up the rows of three neighbors each with full adders (sum + 2 * carry)
+            LongVector aboveSum = xor(xor(aboveLeft, above), aboveRight);
+            LongVector aboveCarry = aboveLeft.and(above).or(aboveRight.and(xor(aboveLeft, above)));
+            LongVector middleSum = xor(middleLeft, middleRight);
+            LongVector middleCarry = middleLeft.and(middleRight);
+            LongVector belowSum = xor(xor(belowLeft, below), belowRight);
+            LongVector belowCarry = belowLeft.and(below).or(belowRight.and(xor(belowLeft, below)));
+
+            // Count bits: ones + 2 * twos + 4 * fours (+ 8 * eights)
+            LongVector ones = xor(xor(aboveSum, middleSum), belowSum);
+            LongVector onesCarry = aboveSum.and(middleSum).or(belowSum.and(xor(aboveSum, middleSum)));
+            LongVector carrySum = xor(xor(aboveCarry, middleCarry), belowCarry);
+            LongVector carryCarry = aboveCarry.and(middleCarry).or(belowCarry.and(xor(aboveCarry, middleCarry)));
+            LongVector twos = xor(carrySum, onesCarry);
+            LongVector fours = xor(carryCarry, carrySum.and(onesCarry));
+            LongVector eights = carryCarry.and(carrySum).and(onesCarry);
+
+            // Alive if the count is 3, or 2 and the cell is already alive
+            twos.and(fours.not()).and(eights.not()).and(ones.or(middle)).intoArray(result, row);
+        }
+        for (; row < TILE_SIZE; row++) {
+            result[row] = TiledEngine.nextRow(
+                    leftColumn[row], column[row], rightColumn[row],
+                    leftColumn[row + 1], column[row + 1], rightColumn[row + 1],
+                    leftColumn[row + 2], column[row + 2], rightColumn[row + 2],
+                    birth, survival);
+        }
+    }
+
+    private static LongVector xor(LongVector a, LongVector b) {
+        return a.lanewise(VectorOperators.XOR, b);
+    }
+}